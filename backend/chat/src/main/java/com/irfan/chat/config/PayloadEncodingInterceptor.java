@@ -0,0 +1,118 @@
+package com.irfan.chat.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Negotiates the payload encoding of each STOMP session. JSON is the default; a
+ * client on the plain WebSocket endpoint ({@code /ws-stomp}) can ask for CBOR by
+ * sending {@code accept: application/cbor} with CONNECT, and can then send
+ * frames with {@code content-type: application/cbor} too.
+ *
+ * Payloads are still converted to JSON once, and {@link SourceRetainingMessageConverter}
+ * keeps the source object on the message, so a CBOR session's frame is encoded
+ * from that object rather than transcoded from the JSON. A broadcast hands the
+ * same object to every subscriber, so one encoding serves the whole fan-out.
+ *
+ * CBOR goes out in binary WebSocket frames with
+ * {@code content-type: application/octet-stream;format=cbor}, since Spring only
+ * sends binary frames for octet-stream content. Dates are arrays of
+ * [year, month, day, hour, minute, second, nanos].
+ */
+@Component
+public class PayloadEncodingInterceptor implements ChannelInterceptor {
+
+    public static final MimeType CBOR = new MimeType("application", "cbor");
+    public static final MimeType CBOR_FRAME = new MimeType("application", "octet-stream", Map.of("format", "cbor"));
+
+    static final String SOURCE_HEADER = "chatSourcePayload";
+    static final String BINARY_FRAMES_ATTRIBUTE = "chat.binaryFrames";
+
+    private record Encoded(Object source, byte[] bytes) {}
+
+    private final ObjectMapper cborMapper = CBORMapper.builder()
+        .findAndAddModules()
+        .enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+        .build();
+
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Encoded> lastEncoded = new AtomicReference<>();
+
+    public ObjectMapper cborMapper() {
+        return cborMapper;
+    }
+
+    public boolean usesCbor(String sessionId) {
+        return cborSessions.contains(sessionId);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getSessionId() == null) {
+            return message;
+        }
+        String sessionId = accessor.getSessionId();
+        SimpMessageType type = accessor.getMessageType();
+        if (type == SimpMessageType.CONNECT) {
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            if (attributes != null && Boolean.TRUE.equals(attributes.get(BINARY_FRAMES_ATTRIBUTE)) && acceptsCbor(accessor)) {
+                cborSessions.add(sessionId);
+            }
+        } else if (type == SimpMessageType.DISCONNECT) {
+            cborSessions.remove(sessionId);
+        } else if (type == SimpMessageType.MESSAGE && cborSessions.contains(sessionId)) {
+            Object source = accessor.getHeader(SOURCE_HEADER);
+            if (source != null) {
+                return toCbor(message, source);
+            }
+        }
+        return message;
+    }
+
+    private Message<?> toCbor(Message<?> message, Object source) {
+        Encoded encoded = lastEncoded.get();
+        if (encoded == null || encoded.source() != source) {
+            try {
+                encoded = new Encoded(source, cborMapper.writeValueAsBytes(source));
+            } catch (Exception e) {
+                System.err.println("Error encoding payload as CBOR, sending JSON: " + e.getMessage());
+                return message;
+            }
+            lastEncoded.set(encoded);
+        }
+        MessageHeaderAccessor headers = MessageHeaderAccessor.getMutableAccessor(message);
+        headers.setContentType(CBOR_FRAME);
+        return MessageBuilder.createMessage(encoded.bytes(), headers.getMessageHeaders());
+    }
+
+    private static boolean acceptsCbor(SimpMessageHeaderAccessor accessor) {
+        String accept = accessor.getFirstNativeHeader("accept");
+        if (accept == null) {
+            return false;
+        }
+        try {
+            return MimeTypeUtils.parseMimeTypes(accept).stream().anyMatch(CBOR::equalsTypeAndSubtype);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.irfan.chat.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.SmartMessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+/**
+ * The JSON converter for outgoing STOMP payloads, which also keeps the object it
+ * serialized in the {@link PayloadEncodingInterceptor#SOURCE_HEADER} header. The
+ * broker copies that header onto each subscriber's copy of the message, so
+ * sessions that negotiated CBOR can be sent the same object in CBOR.
+ */
+class SourceRetainingMessageConverter implements SmartMessageConverter {
+
+    private final MappingJackson2MessageConverter json;
+
+    SourceRetainingMessageConverter(MappingJackson2MessageConverter json) {
+        this.json = json;
+    }
+
+    @Override
+    public Object fromMessage(Message<?> message, Class<?> targetClass) {
+        return json.fromMessage(message, targetClass);
+    }
+
+    @Override
+    public Object fromMessage(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        return json.fromMessage(message, targetClass, conversionHint);
+    }
+
+    @Override
+    public Message<?> toMessage(Object payload, MessageHeaders headers) {
+        return retainSource(json.toMessage(payload, headers), payload);
+    }
+
+    @Override
+    public Message<?> toMessage(Object payload, MessageHeaders headers, Object conversionHint) {
+        return retainSource(json.toMessage(payload, headers, conversionHint), payload);
+    }
+
+    private static Message<?> retainSource(Message<?> message, Object payload) {
+        if (message == null) {
+            return null;
+        }
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, MessageHeaderAccessor.class);
+        if (accessor != null && accessor.isMutable()) {
+            accessor.setHeader(PayloadEncodingInterceptor.SOURCE_HEADER, payload);
+            return message;
+        }
+        return MessageBuilder.fromMessage(message).setHeader(PayloadEncodingInterceptor.SOURCE_HEADER, payload).build();
+    }
+}
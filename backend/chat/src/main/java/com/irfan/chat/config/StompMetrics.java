@@ -0,0 +1,82 @@
+package com.irfan.chat.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts STOMP messages per destination: frames clients SEND, on the inbound
+ * channel, and MESSAGE frames to sessions, on the outbound channel. User
+ * destinations are counted under the address the client subscribed to
+ * ({@code /user/queue/private}) rather than the per-session queue, and past
+ * {@link #MAX_DESTINATIONS} distinct destinations in a direction the rest are
+ * counted as "other".
+ */
+@Component
+public class StompMetrics {
+
+    static final int MAX_DESTINATIONS = 200;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ChannelInterceptor inbound = new DestinationCounter("inbound");
+    private final ChannelInterceptor outbound = new DestinationCounter("outbound");
+
+    public ChannelInterceptor inbound() {
+        return inbound;
+    }
+
+    public ChannelInterceptor outbound() {
+        return outbound;
+    }
+
+    private class DestinationCounter implements ChannelInterceptor {
+
+        private final String direction;
+        private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+        DestinationCounter(String direction) {
+            this.direction = direction;
+        }
+
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+            if (accessor == null || accessor.getMessageType() != SimpMessageType.MESSAGE) {
+                return message;
+            }
+            String destination = (String) accessor.getHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION);
+            if (destination == null) {
+                destination = accessor.getDestination();
+            }
+            if (destination != null) {
+                counter(destination).increment();
+            }
+            return message;
+        }
+
+        private Counter counter(String destination) {
+            Counter counter = counters.get(destination);
+            if (counter != null) {
+                return counter;
+            }
+            String tag = counters.size() < MAX_DESTINATIONS ? destination : "other";
+            return counters.computeIfAbsent(tag, key -> Counter.builder("chat.stomp.messages")
+                .description("STOMP messages by destination, sent by clients (inbound) or to them (outbound)")
+                .tag("direction", direction)
+                .tag("destination", key)
+                .register(meterRegistry));
+        }
+    }
+}
@@ -1,13 +1,38 @@
 package com.irfan.chat.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.*;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PayloadEncodingInterceptor payloadEncodingInterceptor;
+
+    @Autowired
+    private StompMetrics stompMetrics;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.enableSimpleBroker("/topic", "/queue", "/user");
@@ -23,6 +48,52 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .withSockJS()
                 .setHeartbeatTime(25000)
                 .setDisconnectDelay(5000);
+
+        // Plain WebSocket, for clients that can take binary frames and so may negotiate CBOR.
+        registry.addEndpoint("/ws-stomp")
+                .setAllowedOriginPatterns("*")
+                .setHandshakeHandler(new UserHandshakeHandler())
+                .addInterceptors(new BinaryFramesInterceptor());
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+        resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+        MappingJackson2MessageConverter json = new MappingJackson2MessageConverter(objectMapper);
+        json.setContentTypeResolver(resolver);
+
+        messageConverters.clear();
+        messageConverters.add(new StringMessageConverter());
+        messageConverters.add(new ByteArrayMessageConverter());
+        messageConverters.add(new SourceRetainingMessageConverter(json));
+        // Reads SEND frames from clients that negotiated CBOR.
+        messageConverters.add(new MappingJackson2MessageConverter(payloadEncodingInterceptor.cborMapper(), PayloadEncodingInterceptor.CBOR));
+        return false;
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(payloadEncodingInterceptor, stompMetrics.inbound());
     }
-} 
 
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(payloadEncodingInterceptor, stompMetrics.outbound());
+    }
+
+    private static class BinaryFramesInterceptor implements HandshakeInterceptor {
+
+        @Override
+        public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Map<String, Object> attributes) {
+            attributes.put(PayloadEncodingInterceptor.BINARY_FRAMES_ATTRIBUTE, true);
+            return true;
+        }
+
+        @Override
+        public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Exception exception) {
+        }
+    }
+} 
@@ -0,0 +1,66 @@
+package com.irfan.chat.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Backlog and session gauges for the STOMP endpoint: how many messages wait in
+ * the client inbound and outbound channel executors, how many of their threads
+ * are busy, and how many WebSocket and SockJS sessions are open.
+ */
+@Component
+public class WebSocketMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private WebSocketMessageBrokerStats webSocketMessageBrokerStats;
+
+    @Autowired
+    @Qualifier("clientInboundChannelExecutor")
+    private ThreadPoolTaskExecutor inboundExecutor;
+
+    @Autowired
+    @Qualifier("clientOutboundChannelExecutor")
+    private ThreadPoolTaskExecutor outboundExecutor;
+
+    @PostConstruct
+    public void register() {
+        channel("inbound", inboundExecutor);
+        channel("outbound", outboundExecutor);
+        sessions("websocket", SubProtocolWebSocketHandler.Stats::getWebSocketSessions);
+        sessions("http-streaming", SubProtocolWebSocketHandler.Stats::getHttpStreamingSessions);
+        sessions("http-polling", SubProtocolWebSocketHandler.Stats::getHttpPollingSessions);
+    }
+
+    private void channel(String name, ThreadPoolTaskExecutor executor) {
+        Gauge.builder("chat.stomp.channel.queue", executor, ThreadPoolTaskExecutor::getQueueSize)
+            .description("Messages waiting for a thread of the client channel executor")
+            .tag("channel", name)
+            .register(meterRegistry);
+        Gauge.builder("chat.stomp.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+            .description("Client channel executor threads handling a message")
+            .tag("channel", name)
+            .register(meterRegistry);
+    }
+
+    private void sessions(String transport, ToIntFunction<SubProtocolWebSocketHandler.Stats> count) {
+        Gauge.builder("chat.websocket.sessions", webSocketMessageBrokerStats, stats -> {
+                SubProtocolWebSocketHandler.Stats sessions = stats.getWebSocketSessionStats();
+                return sessions != null ? count.applyAsInt(sessions) : 0;
+            })
+            .description("Open STOMP sessions by transport")
+            .tag("transport", transport)
+            .register(meterRegistry);
+    }
+}
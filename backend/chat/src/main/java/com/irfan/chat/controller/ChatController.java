@@ -1,18 +1,30 @@
 package com.irfan.chat.controller;
 
+import com.irfan.chat.dto.InboxEntry;
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.dto.PresenceSnapshot;
+import com.irfan.chat.dto.PrivateChatSummary;
 import com.irfan.chat.model.ChatMessage;
 import com.irfan.chat.model.User;
-import com.irfan.chat.model.PrivateChat;
 import com.irfan.chat.service.ChatService;
 import com.irfan.chat.service.UserService;
 import com.irfan.chat.service.PrivateChatService;
+import com.irfan.chat.service.InboxService;
+import com.irfan.chat.service.MessageSearchService;
 import com.irfan.chat.service.NotificationService;
+import com.irfan.chat.service.NotificationFanoutService;
+import com.irfan.chat.service.PresenceBroadcaster;
+import com.irfan.chat.service.RecentMessageBuffer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -37,21 +49,34 @@ public class ChatController {
     
     @Autowired
     private PrivateChatService privateChatService;
+    
+    @Autowired
+    private InboxService inboxService;
+    
+    @Autowired
+    private MessageSearchService messageSearchService;
 
     @Autowired
     private MessageRepository messageRepository;
     
     @Autowired
-    private SimpMessagingTemplate simpMessagingTemplate;
+    private NotificationService notificationService;
     
     @Autowired
-    private NotificationService notificationService;
+    private NotificationFanoutService notificationFanoutService;
+
+    @Autowired
+    private RecentMessageBuffer recentMessageBuffer;
 
+    @Autowired
+    private PresenceBroadcaster presenceBroadcaster;
+
+    // Kept for older clients; returns only the latest page, use /api/private-chat/{user1}/{user2}/messages to page back.
     @GetMapping("/api/messages/private/{user1}/{user2}")
     @ResponseBody
     public List<ChatMessage> getPrivateMessages(@PathVariable String user1, @PathVariable String user2) {
         System.out.println("API: Fetching private messages between " + user1 + " and " + user2);
-        List<ChatMessage> messages = chatService.getPrivateMessages(user1, user2);
+        List<ChatMessage> messages = privateChatService.getPrivateMessages(user1, user2, null, ChatService.DEFAULT_PAGE_SIZE).messages();
         System.out.println("API: Returning " + messages.size() + " messages");
         return messages;
     }
@@ -62,14 +87,55 @@ public class ChatController {
         return userService.getOnlineUsers();
     }
 
+    @GetMapping("/api/presence")
+    @ResponseBody
+    public PresenceSnapshot getPresenceSnapshot() {
+        return presenceBroadcaster.snapshot();
+    }
+
+    // Sent straight back to the subscribing session, before it applies deltas from /topic/presence.
+    @SubscribeMapping("/presence")
+    public PresenceSnapshot subscribePresence() {
+        return presenceBroadcaster.snapshot();
+    }
+
+    @GetMapping("/api/messages/global")
+    @ResponseBody
+    public ResponseEntity<?> getGlobalMessages(@RequestParam(required = false) Long before,
+                                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime beforeTime,
+                                               @RequestParam(defaultValue = "" + ChatService.DEFAULT_PAGE_SIZE) int limit) {
+        byte[] cached = recentMessageBuffer.page(before, beforeTime, ChatService.pageSize(limit));
+        if (cached != null) {
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(cached);
+        }
+        return ResponseEntity.ok(chatService.getGlobalHistory(before, beforeTime, limit));
+    }
+
+    // Kept for older clients; returns only the latest page instead of the whole table.
     @GetMapping("/api/messages/all")
     @ResponseBody
     public List<ChatMessage> getAllGlobalMessages() {
-        return chatService.getAllGlobalMessages();
+        return chatService.getRecentGlobalMessages(ChatService.DEFAULT_PAGE_SIZE);
     }
 
 
 
+    // Global messages and the user's own private chats, most relevant first.
+    @GetMapping("/api/messages/search/{username}")
+    @ResponseBody
+    public ResponseEntity<?> searchMessages(@PathVariable String username,
+                                            @RequestParam String q,
+                                            @RequestParam(required = false) String before,
+                                            @RequestParam(defaultValue = "" + MessageSearchService.DEFAULT_PAGE_SIZE) int limit) {
+        try {
+            return ResponseEntity.ok(messageSearchService.search(username, q, before, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
     @GetMapping("/api/users/reset-offline")
     @ResponseBody
     public String resetAllUsersOffline() {
@@ -80,33 +146,44 @@ public class ChatController {
     @PostMapping("/api/users/disconnect/{username}")
     @ResponseBody
     public String userDisconnect(@PathVariable String username) {
-        userService.setUserOnline(username, false);
+        // Presence follows the user's STOMP sessions; the closing tab's own session disconnect takes it down.
         userService.updateUserLastSeen(username);
-        chatService.sendOnlineUsersUpdate();
-        return "User " + username + " marked as offline";
+        return "Last seen updated for user " + username;
     }
 
 
     
     @GetMapping("/api/private-chats/{username}")
     @ResponseBody
-    public List<PrivateChat> getUserPrivateChats(@PathVariable String username) {
+    public List<PrivateChatSummary> getUserPrivateChats(@PathVariable String username) {
         System.out.println("Getting private chats for user: " + username);
         return privateChatService.getUserPrivateChats(username);
     }
     
+    @GetMapping("/api/private-chats/{username}/inbox")
+    @ResponseBody
+    public List<InboxEntry> getInbox(@PathVariable String username) {
+        return inboxService.inbox(username);
+    }
+    
     @GetMapping("/api/private-chat/{chatId}/messages")
     @ResponseBody
-    public List<ChatMessage> getChatMessages(@PathVariable Long chatId) {
+    public MessagePage getChatMessages(@PathVariable Long chatId,
+                                       @RequestParam(required = false) Long before,
+                                       @RequestParam(required = false) Long after,
+                                       @RequestParam(defaultValue = "" + ChatService.DEFAULT_PAGE_SIZE) int limit) {
         System.out.println("Getting messages for chat: " + chatId);
-        return privateChatService.getChatMessages(chatId);
+        return privateChatService.getChatMessages(chatId, before, after, limit);
     }
     
     @GetMapping("/api/private-chat/{user1}/{user2}/messages")
     @ResponseBody
-    public List<ChatMessage> getPrivateMessagesBetweenUsers(@PathVariable String user1, @PathVariable String user2) {
+    public MessagePage getPrivateMessagesBetweenUsers(@PathVariable String user1,
+                                                      @PathVariable String user2,
+                                                      @RequestParam(required = false) Long before,
+                                                      @RequestParam(defaultValue = "" + ChatService.DEFAULT_PAGE_SIZE) int limit) {
         System.out.println("Getting messages between " + user1 + " and " + user2);
-        return privateChatService.getPrivateMessages(user1, user2);
+        return privateChatService.getPrivateMessages(user1, user2, before, limit);
     }
     
     @MessageMapping("/chat.send")
@@ -114,15 +191,7 @@ public class ChatController {
         System.out.println("Received global message from: " + chatMessage.getSender());
         chatService.sendGlobalMessage(chatMessage);
         
-        
-        List<User> onlineUsers = userService.getOnlineUsers();
-        System.out.println("Sending global message notifications to " + (onlineUsers.size() - 1) + " users");
-        for (User user : onlineUsers) {
-            if (!user.getUsername().equals(chatMessage.getSender())) {
-                System.out.println("Sending notification to user: " + user.getUsername());
-                notificationService.sendGlobalMessageNotification(user.getUsername(), chatMessage.getSender(), chatMessage.getContent());
-            }
-        }
+        notificationFanoutService.submitGlobalMessage(chatMessage.getSender(), chatMessage.getContent());
     }
 
     @MessageMapping("/chat.private")
@@ -139,11 +208,7 @@ public class ChatController {
             System.out.println("Private message saved with ID: " + savedMessage.getId());
             
             
-            simpMessagingTemplate.convertAndSendToUser(
-                recipient,
-                "/queue/private",
-                savedMessage
-            );
+            privateChatService.deliverPrivateMessage(savedMessage);
             
             
             if (!recipient.equals(sender)) {
@@ -169,25 +234,21 @@ public class ChatController {
             chatService.notifyUserJoined(chatMessage.getSender());
         }
         
-        userService.setUserOnline(chatMessage.getSender(), true);
-        chatService.sendOnlineUsersUpdate();
+        userService.connectSession(result.getUser(), headerAccessor.getSessionId());
     }
 
     @MessageMapping("/chat.reconnect")
     public void reconnectUser(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
         headerAccessor.getSessionAttributes().put("username", chatMessage.getSender());
         
-        userService.setUserOnline(chatMessage.getSender(), true);
-        chatService.sendOnlineUsersUpdate();
+        userService.connectSession(chatMessage.getSender(), headerAccessor.getSessionId());
     }
 
     @MessageMapping("/chat.removeUser")
     public void removeUser(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
         String username = (String) headerAccessor.getSessionAttributes().get("username");
         if (username != null) {
-            userService.setUserOnline(username, false);
-            userService.updateUserLastSeen(username);
-            chatService.sendOnlineUsersUpdate();
+            userService.disconnectSession(username, headerAccessor.getSessionId());
         }
     }
 }
\ No newline at end of file
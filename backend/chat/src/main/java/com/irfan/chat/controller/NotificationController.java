@@ -1,11 +1,14 @@
 package com.irfan.chat.controller;
 
-import com.irfan.chat.model.Notification;
+import com.irfan.chat.dto.UnreadCounts;
 import com.irfan.chat.service.NotificationService;
+import com.irfan.chat.service.UnreadCounters;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.security.Principal;
 
 @RestController
 @RequestMapping("/api/notifications")
@@ -15,16 +18,35 @@ public class NotificationController {
     @Autowired
     private NotificationService notificationService;
     
+    @Autowired
+    private UnreadCounters unreadCounters;
+    
     
     @GetMapping("/{username}")
-    public List<Notification> getUserNotifications(@PathVariable String username) {
-        return notificationService.getUserNotifications(username);
+    public ResponseEntity<?> getUserNotifications(@PathVariable String username,
+                                                  @RequestParam(required = false) String chatType,
+                                                  @RequestParam(required = false) String chatId,
+                                                  @RequestParam(required = false) String before,
+                                                  @RequestParam(defaultValue = "" + NotificationService.DEFAULT_PAGE_SIZE) int limit) {
+        return page(username, false, chatType, chatId, before, limit);
     }
     
     
     @GetMapping("/{username}/unread")
-    public List<Notification> getUnreadNotifications(@PathVariable String username) {
-        return notificationService.getUnreadNotifications(username);
+    public ResponseEntity<?> getUnreadNotifications(@PathVariable String username,
+                                                    @RequestParam(required = false) String chatType,
+                                                    @RequestParam(required = false) String chatId,
+                                                    @RequestParam(required = false) String before,
+                                                    @RequestParam(defaultValue = "" + NotificationService.DEFAULT_PAGE_SIZE) int limit) {
+        return page(username, true, chatType, chatId, before, limit);
+    }
+    
+    private ResponseEntity<?> page(String username, boolean unreadOnly, String chatType, String chatId, String before, int limit) {
+        try {
+            return ResponseEntity.ok(notificationService.getNotifications(username, unreadOnly, chatType, chatId, before, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
     
     
@@ -33,6 +55,18 @@ public class NotificationController {
         return notificationService.getUnreadNotificationCount(username);
     }
     
+    
+    @GetMapping("/{username}/unread/counts")
+    public UnreadCounts getUnreadCounts(@PathVariable String username) {
+        return unreadCounters.snapshot(username);
+    }
+    
+    // Sent back to the subscribing session; later changes arrive on /user/queue/unread.
+    @SubscribeMapping("/unread")
+    public UnreadCounts subscribeUnreadCounts(Principal principal) {
+        return unreadCounters.snapshot(principal.getName());
+    }
+    
    
     @PostMapping("/{username}/read/{chatId}")
     public String markNotificationsAsRead(@PathVariable String username, @PathVariable String chatId) {
@@ -0,0 +1,10 @@
+package com.irfan.chat.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * One conversation in a user's inbox: the other participant, the latest message
+ * and how many notifications of the chat the user has not read yet.
+ */
+public record InboxEntry(Long chatId, String otherUser, String lastMessage, LocalDateTime lastMessageTime, long unread) {
+}
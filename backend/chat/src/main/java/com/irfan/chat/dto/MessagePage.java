@@ -0,0 +1,13 @@
+package com.irfan.chat.dto;
+
+import com.irfan.chat.model.ChatMessage;
+
+import java.util.List;
+
+/**
+ * One page of history in chronological order. {@code nextCursor} is the id to
+ * continue from in the same direction ({@code before} for older pages,
+ * {@code after} for newer ones), or null when there is nothing further.
+ */
+public record MessagePage(List<ChatMessage> messages, Long nextCursor, boolean hasMore) {
+}
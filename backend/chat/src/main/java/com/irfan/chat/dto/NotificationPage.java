@@ -0,0 +1,14 @@
+package com.irfan.chat.dto;
+
+import com.irfan.chat.model.Notification;
+
+import java.util.List;
+
+/**
+ * One page of notifications, newest first. {@code nextCursor} is passed back as
+ * {@code before} to get the next older page, or is null when there is nothing
+ * further. It carries the last notification's timestamp as well as its id, so
+ * it stays valid when that notification is folded into a newer one.
+ */
+public record NotificationPage(List<Notification> notifications, String nextCursor, boolean hasMore) {
+}
@@ -0,0 +1,12 @@
+package com.irfan.chat.dto;
+
+import com.irfan.chat.model.User;
+
+import java.util.List;
+
+/**
+ * Presence changes since {@code version - 1}. A client that missed a version
+ * should fetch a fresh {@link PresenceSnapshot} instead of applying this.
+ */
+public record PresenceDelta(long version, List<User> joined, List<String> left) {
+}
@@ -0,0 +1,11 @@
+package com.irfan.chat.dto;
+
+import com.irfan.chat.model.User;
+
+import java.util.List;
+
+/**
+ * Everyone online as of {@code version}; deltas with a higher version apply on top.
+ */
+public record PresenceSnapshot(long version, List<User> users) {
+}
@@ -0,0 +1,11 @@
+package com.irfan.chat.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A private chat as listed to one of its participants, read straight from the
+ * columns rather than as a managed entity. Serializes like {@code PrivateChat}.
+ */
+public record PrivateChatSummary(Long id, String user1, String user2, String lastMessage, LocalDateTime lastMessageTime,
+                                 LocalDateTime createdAt, Boolean isActive) {
+}
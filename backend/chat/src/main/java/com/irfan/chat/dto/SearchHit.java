@@ -0,0 +1,11 @@
+package com.irfan.chat.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A message matching a search, with its relevance to the query. {@code privateChatId}
+ * is null for global messages.
+ */
+public record SearchHit(Long id, String content, String sender, String recipient, String messageType,
+                        LocalDateTime timestamp, Long privateChatId, float rank) {
+}
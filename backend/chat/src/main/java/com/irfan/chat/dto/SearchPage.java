@@ -0,0 +1,11 @@
+package com.irfan.chat.dto;
+
+import java.util.List;
+
+/**
+ * One page of search results, most relevant first. {@code nextCursor} is passed
+ * back as {@code before} to get the next page, or is null when there is nothing
+ * further.
+ */
+public record SearchPage(List<SearchHit> hits, String nextCursor, boolean hasMore) {
+}
@@ -0,0 +1,10 @@
+package com.irfan.chat.dto;
+
+import java.util.Map;
+
+/**
+ * Unread notifications of one recipient: the total and the count per chat id.
+ * Pushed updates only list the chats that changed; a chat at 0 has been read.
+ */
+public record UnreadCounts(long total, Map<String, Long> chats) {
+}
@@ -1,6 +1,5 @@
 package com.irfan.chat.event;
 
-import com.irfan.chat.service.ChatService;
 import com.irfan.chat.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
@@ -12,9 +11,6 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 @Component
 public class WebSocketEventListener {
 
-    @Autowired
-    private ChatService chatService;
-
     @Autowired
     private UserService userService;
 
@@ -30,9 +26,7 @@ public class WebSocketEventListener {
         String username = (String) headerAccessor.getSessionAttributes().get("username");
         
         if (username != null) {
-            userService.setUserOnline(username, false);
-            userService.updateUserLastSeen(username);
-            chatService.sendOnlineUsersUpdate();
+            userService.disconnectSession(username, event.getSessionId());
         }
     }
 }
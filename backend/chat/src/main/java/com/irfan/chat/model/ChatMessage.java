@@ -7,12 +7,28 @@ import java.time.LocalDateTime;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_type_created_id", columnList = "message_type, created_at, id"),
+    @Index(name = "idx_messages_chat_created_id", columnList = "private_chat_id, created_at, id")
+})
+// History reads build detached messages from these columns instead of managed entities.
+@SqlResultSetMapping(name = ChatMessage.ROW_MAPPING, classes = @ConstructorResult(targetClass = ChatMessage.class, columns = {
+    @ColumnResult(name = "id", type = Long.class),
+    @ColumnResult(name = "content", type = String.class),
+    @ColumnResult(name = "sender", type = String.class),
+    @ColumnResult(name = "recipient", type = String.class),
+    @ColumnResult(name = "message_type", type = String.class),
+    @ColumnResult(name = "created_at", type = LocalDateTime.class)
+}))
 @Data
 @NoArgsConstructor
 public class ChatMessage {
+
+    public static final String ROW_MAPPING = "ChatMessageRow";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_seq")
+    @SequenceGenerator(name = "messages_seq", sequenceName = "messages_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false)
@@ -59,4 +75,13 @@ public class ChatMessage {
         this.timestamp = LocalDateTime.now();
         this.messageType = MessageType.PRIVATE;
     }
+    
+    public ChatMessage(Long id, String content, String sender, String recipient, String messageType, LocalDateTime timestamp) {
+        this.id = id;
+        this.content = content;
+        this.sender = sender;
+        this.recipient = recipient;
+        this.messageType = MessageType.valueOf(messageType);
+        this.timestamp = timestamp;
+    }
 }
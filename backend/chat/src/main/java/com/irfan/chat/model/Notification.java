@@ -8,7 +8,8 @@ import java.time.LocalDateTime;
 public class Notification {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notifications_seq")
+    @SequenceGenerator(name = "notifications_seq", sequenceName = "notifications_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false)
@@ -35,6 +36,10 @@ public class Notification {
     @Column(nullable = false)
     private String messageType; 
     
+    // Messages folded into this row while it was unread (always 1 unless notifications are collapsed).
+    @Column(name = "message_count", nullable = false, columnDefinition = "integer default 1")
+    private int count = 1;
+    
     
     public Notification() {}
     
@@ -121,4 +126,12 @@ public class Notification {
     public void setMessageType(String messageType) {
         this.messageType = messageType;
     }
+    
+    public int getCount() {
+        return count;
+    }
+    
+    public void setCount(int count) {
+        this.count = count;
+    }
 }
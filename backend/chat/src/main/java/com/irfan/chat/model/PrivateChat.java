@@ -13,7 +13,8 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 @NoArgsConstructor
 public class PrivateChat {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "private_chats_seq")
+    @SequenceGenerator(name = "private_chats_seq", sequenceName = "private_chats_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "user1", nullable = false)
@@ -38,12 +39,33 @@ public class PrivateChat {
     @OneToMany(mappedBy = "privateChat", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<ChatMessage> messages;
     
+    // The pair is kept in canonical order so that it has a single row either way round.
     public PrivateChat(String user1, String user2) {
-        this.user1 = user1;
-        this.user2 = user2;
+        this.user1 = compareUsernames(user1, user2) <= 0 ? user1 : user2;
+        this.user2 = compareUsernames(user1, user2) <= 0 ? user2 : user1;
         this.createdAt = LocalDateTime.now();
         this.isActive = true;
     }
+
+    /**
+     * Orders usernames by Unicode code point, the order {@code COLLATE "C"} gives
+     * in a UTF-8 database. {@link String#compareTo} compares UTF-16 code units
+     * instead, which puts supplementary characters before U+E000..U+FFFF.
+     */
+    public static int compareUsernames(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
     
     public boolean involvesUser(String username) {
         return user1.equals(username) || user2.equals(username);
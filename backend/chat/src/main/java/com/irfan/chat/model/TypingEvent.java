@@ -0,0 +1,4 @@
+package com.irfan.chat.model;
+
+public record TypingEvent(String sender, String chatType, String chatId, boolean typing) {
+}
@@ -3,32 +3,108 @@ package com.irfan.chat.repository;
 import com.irfan.chat.model.ChatMessage;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.NativeQuery;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.List;
 
+@Transactional(readOnly = true)
 public interface MessageRepository extends JpaRepository<ChatMessage, Long> {
     
     List<ChatMessage> findByMessageTypeOrderByTimestampDesc(ChatMessage.MessageType messageType, Pageable pageable);
     
     List<ChatMessage> findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType messageType, Pageable pageable);
     
-    List<ChatMessage> findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType messageType);
-    
-    @Query("SELECT m FROM ChatMessage m WHERE m.messageType = 'PRIVATE' AND ((m.sender = :user1 AND m.recipient = :user2) OR (m.sender = :user2 AND m.recipient = :user1)) ORDER BY m.timestamp ASC")
-    List<ChatMessage> findPrivateMessages(@Param("user1") String user1, @Param("user2") String user2);
-    
-    @Query("SELECT m FROM ChatMessage m WHERE m.privateChat.id = :chatId ORDER BY m.timestamp ASC")
-    List<ChatMessage> findMessagesByChatId(@Param("chatId") Long chatId);
-    
     @Query("SELECT m FROM ChatMessage m WHERE m.messageType = 'PRIVATE' AND m.privateChat.id = :chatId ORDER BY m.timestamp DESC")
     List<ChatMessage> findLatestPrivateMessagesByChatId(@Param("chatId") Long chatId, Pageable pageable);
     
     @Query("SELECT m FROM ChatMessage m WHERE m.sender = :sender ORDER BY m.timestamp DESC")
     List<ChatMessage> findBySender(@Param("sender") String sender);
     
-    @Query("SELECT m FROM ChatMessage m ORDER BY m.timestamp ASC")
-    List<ChatMessage> findAllOrderByTimestamp();
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM messages)", nativeQuery = true)
+    boolean hasAnyMessage();
+    
+    // History is read as detached messages built from the named columns (see ChatMessage.ROW_MAPPING):
+    // no persistence context entries, snapshots or proxies for the user and chat, and the stored search
+    // vector is not read with every message.
+    
+    // Global history is one ordered index range per message type, merged and cut to the page size.
+    @NativeQuery(value = """
+        SELECT m.* FROM unnest(ARRAY['GLOBAL', 'SYSTEM']) AS t(type)
+        CROSS JOIN LATERAL (
+            SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE message_type = t.type
+            ORDER BY created_at DESC, id DESC LIMIT :limit
+        ) m
+        ORDER BY m.created_at DESC, m.id DESC LIMIT :limit
+        """, sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findLatestGlobalMessages(@Param("limit") int limit);
+    
+    @NativeQuery(value = """
+        SELECT m.* FROM unnest(ARRAY['GLOBAL', 'SYSTEM']) AS t(type)
+        CROSS JOIN LATERAL (
+            SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE message_type = t.type
+              AND (created_at, id) < (SELECT c.created_at, c.id FROM messages c WHERE c.id = :beforeId)
+            ORDER BY created_at DESC, id DESC LIMIT :limit
+        ) m
+        ORDER BY m.created_at DESC, m.id DESC LIMIT :limit
+        """, sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findGlobalMessagesBefore(@Param("beforeId") Long beforeId, @Param("limit") int limit);
+    
+    @NativeQuery(value = """
+        SELECT m.* FROM unnest(ARRAY['GLOBAL', 'SYSTEM']) AS t(type)
+        CROSS JOIN LATERAL (
+            SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE message_type = t.type AND created_at < :beforeTime
+            ORDER BY created_at DESC, id DESC LIMIT :limit
+        ) m
+        ORDER BY m.created_at DESC, m.id DESC LIMIT :limit
+        """, sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findGlobalMessagesBeforeTime(@Param("beforeTime") LocalDateTime beforeTime, @Param("limit") int limit);
+    
+    @NativeQuery(value = "SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE private_chat_id = :chatId ORDER BY created_at DESC, id DESC LIMIT :limit", sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findLatestChatMessages(@Param("chatId") Long chatId, @Param("limit") int limit);
+    
+    @NativeQuery(value = """
+        SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE private_chat_id = :chatId
+          AND (created_at, id) < (SELECT c.created_at, c.id FROM messages c WHERE c.id = :beforeId)
+        ORDER BY created_at DESC, id DESC LIMIT :limit
+        """, sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findChatMessagesBefore(@Param("chatId") Long chatId, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+    
+    @NativeQuery(value = """
+        SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE private_chat_id = :chatId
+          AND (created_at, id) > (SELECT c.created_at, c.id FROM messages c WHERE c.id = :afterId)
+        ORDER BY created_at ASC, id ASC LIMIT :limit
+        """, sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findChatMessagesAfter(@Param("chatId") Long chatId, @Param("afterId") Long afterId, @Param("limit") int limit);
+    
+    // Keyset variants for cursors that may point at an archived message, so the key is passed in.
+    @NativeQuery(value = """
+        SELECT m.* FROM unnest(ARRAY['GLOBAL', 'SYSTEM']) AS t(type)
+        CROSS JOIN LATERAL (
+            SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE message_type = t.type
+              AND (created_at, id) < (:beforeTime, :beforeId)
+            ORDER BY created_at DESC, id DESC LIMIT :limit
+        ) m
+        ORDER BY m.created_at DESC, m.id DESC LIMIT :limit
+        """, sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findGlobalMessagesBeforeKey(@Param("beforeTime") LocalDateTime beforeTime, @Param("beforeId") Long beforeId, @Param("limit") int limit);
+    
+    @NativeQuery(value = """
+        SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE private_chat_id = :chatId
+          AND (created_at, id) < (:beforeTime, :beforeId)
+        ORDER BY created_at DESC, id DESC LIMIT :limit
+        """, sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findChatMessagesBeforeKey(@Param("chatId") Long chatId, @Param("beforeTime") LocalDateTime beforeTime,
+                                                @Param("beforeId") Long beforeId, @Param("limit") int limit);
     
+    @NativeQuery(value = """
+        SELECT id, content, sender, recipient, message_type, created_at FROM messages WHERE private_chat_id = :chatId
+          AND (created_at, id) > (:afterTime, :afterId)
+        ORDER BY created_at ASC, id ASC LIMIT :limit
+        """, sqlResultSetMapping = ChatMessage.ROW_MAPPING)
+    List<ChatMessage> findChatMessagesAfterKey(@Param("chatId") Long chatId, @Param("afterTime") LocalDateTime afterTime,
+                                               @Param("afterId") Long afterId, @Param("limit") int limit);
 
 }
@@ -2,10 +2,10 @@ package com.irfan.chat.repository;
 
 import com.irfan.chat.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
-import java.util.List;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.Optional;
 
+@Transactional(readOnly = true)
 public interface UserRepository extends JpaRepository<User, Long> {
-    List<User> findByOnlineTrue(); 
     Optional<User> findByUsername(String username); 
 }
\ No newline at end of file
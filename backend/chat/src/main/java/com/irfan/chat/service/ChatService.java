@@ -1,20 +1,27 @@
 package com.irfan.chat.service;
 
+import com.irfan.chat.dto.MessagePage;
 import com.irfan.chat.model.ChatMessage;
 import com.irfan.chat.model.User;
 import com.irfan.chat.repository.MessageRepository;
-import org.springframework.data.domain.PageRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 import jakarta.annotation.PostConstruct;
 
 @Service
 public class ChatService {
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 500;
+
     @Autowired
     private MessageRepository messageRepository;
 
@@ -24,21 +31,56 @@ public class ChatService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private MessagePersistenceService messagePersistenceService;
+
+    @Autowired
+    private RecentMessageBuffer recentMessageBuffer;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Timer sendTimer;
+    private Timer persistTimer;
+    private Timer deliverTimer;
+
     
     @PostConstruct
     public void initialize() {
+        sendTimer = messageTimer(meterRegistry, "chat.messages.send", "global", "Time to handle a sent message");
+        persistTimer = messageTimer(meterRegistry, "chat.messages.persist", "global", "Time to store a sent message");
+        deliverTimer = messageTimer(meterRegistry, "chat.messages.deliver", "global", "Time to hand a sent message to the broker");
         verifyMessagePersistence();
     }
 
+    static Timer messageTimer(MeterRegistry registry, String name, String type, String description) {
+        return Timer.builder(name)
+            .description(description)
+            .tag("type", type)
+            .register(registry);
+    }
+
     public void sendGlobalMessage(ChatMessage chatMessage) {
-        User user = userService.findOrCreateUserWithStatus(chatMessage.getSender()).getUser();
-        chatMessage.setUser(user);
-        chatMessage.setMessageType(ChatMessage.MessageType.GLOBAL);
-        
-        messageRepository.save(chatMessage);
-        userService.updateUserLastSeen(chatMessage.getSender());
-        
-        messagingTemplate.convertAndSend("/topic/global", chatMessage);
+        long start = System.nanoTime();
+        try {
+            User user = userService.findOrCreateUserWithStatus(chatMessage.getSender()).getUser();
+            chatMessage.setUser(user);
+            chatMessage.setMessageType(ChatMessage.MessageType.GLOBAL);
+            
+            long persistStart = System.nanoTime();
+            recentMessageBuffer.append(messagePersistenceService.save(chatMessage));
+            persistTimer.record(System.nanoTime() - persistStart, TimeUnit.NANOSECONDS);
+            userService.updateUserLastSeen(chatMessage.getSender());
+            
+            long deliverStart = System.nanoTime();
+            messagingTemplate.convertAndSend("/topic/global", chatMessage);
+            deliverTimer.record(System.nanoTime() - deliverStart, TimeUnit.NANOSECONDS);
+        } finally {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     public void sendPrivateMessage(ChatMessage chatMessage, String recipientUsername) {
@@ -51,7 +93,7 @@ public class ChatService {
         chatMessage.setMessageType(ChatMessage.MessageType.PRIVATE);
         
         try {
-            ChatMessage savedMessage = messageRepository.save(chatMessage);
+            ChatMessage savedMessage = messagePersistenceService.save(chatMessage);
             System.out.println("Private message saved to database with ID: " + savedMessage.getId());
         } catch (Exception e) {
             System.err.println("Error saving private message to database: " + e.getMessage());
@@ -80,83 +122,54 @@ public class ChatService {
         notification.setMessageType(ChatMessage.MessageType.SYSTEM);
         notification.setTimestamp(LocalDateTime.now());
         
-        messageRepository.save(notification);
+        recentMessageBuffer.append(messagePersistenceService.save(notification));
         messagingTemplate.convertAndSend("/topic/global", notification);
-        sendOnlineUsersUpdate();
     }
 
 
 
-    public void sendOnlineUsersUpdate() {
-        List<User> onlineUsers = userService.getOnlineUsers();
-        messagingTemplate.convertAndSend("/topic/online-users", onlineUsers);
-    }
 
 
-    private List<ChatMessage> getGlobalAndSystemMessages(PageRequest pageRequest) {
-        try {
-            List<ChatMessage> globalMessages = pageRequest != null 
-                ? messageRepository.findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType.GLOBAL, pageRequest)
-                : messageRepository.findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType.GLOBAL);
-            
-            List<ChatMessage> systemMessages = pageRequest != null 
-                ? messageRepository.findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType.SYSTEM, pageRequest)
-                : messageRepository.findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType.SYSTEM);
-            
-            List<ChatMessage> allMessages = new ArrayList<>();
-            allMessages.addAll(globalMessages);
-            allMessages.addAll(systemMessages);
-            
-            // Note: NOTIFICATION messages are excluded from global messages
-            // They are only shown in private conversations
-            
-            allMessages.sort((a, b) -> a.getTimestamp().compareTo(b.getTimestamp()));
-            
-            return allMessages;
-        } catch (Exception e) {
-            return new ArrayList<>(); 
+    /**
+     * Returns global and system messages older than the cursor, newest page first
+     * but in chronological order within the page. {@code beforeId} takes precedence
+     * over {@code beforeTime}; with neither, the latest page is returned.
+     */
+    public MessagePage getGlobalHistory(Long beforeId, LocalDateTime beforeTime, int limit) {
+        int pageSize = pageSize(limit);
+        List<ChatMessage> messages;
+        if (messageArchiveService.holds(null)) {
+            messages = messageArchiveService.before(null, beforeId, beforeTime, pageSize + 1);
+        } else if (beforeId != null) {
+            messages = messageRepository.findGlobalMessagesBefore(beforeId, pageSize + 1);
+        } else if (beforeTime != null) {
+            messages = messageRepository.findGlobalMessagesBeforeTime(beforeTime, pageSize + 1);
+        } else {
+            messages = messageRepository.findLatestGlobalMessages(pageSize + 1);
         }
-    }
 
-    public List<ChatMessage> getAllGlobalMessages() {
-        return getGlobalAndSystemMessages(null);
+        boolean hasMore = messages.size() > pageSize;
+        List<ChatMessage> page = new ArrayList<>(messages.subList(0, Math.min(pageSize, messages.size())));
+        Collections.reverse(page);
+        Long nextCursor = hasMore ? page.get(0).getId() : null;
+        return new MessagePage(page, nextCursor, hasMore);
     }
 
-    public List<ChatMessage> getRecentGlobalMessages(int limit) {
-        List<ChatMessage> messages = getGlobalAndSystemMessages(PageRequest.of(0, limit));
-        if (messages.size() > limit) {
-            messages = messages.subList(messages.size() - limit, messages.size());
-        }
-        return messages;
+    public static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
-    public List<ChatMessage> getPrivateMessages(String user1, String user2) {
-        try {
-            System.out.println("Fetching private messages between: " + user1 + " and " + user2);
-            List<ChatMessage> messages = messageRepository.findPrivateMessages(user1, user2);
-            System.out.println("Found " + messages.size() + " private messages");
-            return messages;
-        } catch (Exception e) {
-            System.err.println("Error fetching private messages between " + user1 + " and " + user2 + ": " + e.getMessage());
-            e.printStackTrace();
-            return new ArrayList<>(); 
-        }
+    public List<ChatMessage> getRecentGlobalMessages(int limit) {
+        return getGlobalHistory(null, null, limit).messages();
     }
 
-
-
+    // Startup check that the messages table is reachable; reads at most one row.
     public boolean verifyMessagePersistence() {
         try {
-            List<ChatMessage> globalMessages = messageRepository.findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType.GLOBAL);
-            List<ChatMessage> systemMessages = messageRepository.findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType.SYSTEM);
-            List<User> onlineUsers = userService.getOnlineUsers();
-            
-            boolean hasMessagesFromInactiveUsers = globalMessages.stream()
-                .anyMatch(message -> !message.getSender().equals("System") && 
-                    onlineUsers.stream().noneMatch(user -> user.getUsername().equals(message.getSender())));
-            
+            messageRepository.hasAnyMessage();
             return true;
         } catch (Exception e) {
+            System.err.println("Message persistence check failed: " + e.getMessage());
             return false;
         }
     }
@@ -0,0 +1,182 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.InboxEntry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user inbox: one entry per active private chat with the other participant,
+ * a preview of the latest message and the unread count. Inboxes of recently
+ * active users are kept in an LRU cache bounded by {@code max-users}, and are
+ * updated in place as private messages are sent, so serving one is a map read.
+ * Unread counts come from {@link UnreadCounters}, whose private chat ids are
+ * the other participant's name, and therefore follow reads as they happen.
+ *
+ * As in {@link PrivateChatMessageCache}, every update bumps a stamp for the
+ * user and an inbox loaded from the database is only installed if its stamp did
+ * not change while the query ran.
+ */
+@Service
+public class InboxService {
+
+    private static final int STAMP_STRIPES = 64;
+
+    // Two index lookups instead of an OR over user1 and user2; a chat with oneself is listed once.
+    private static final String LOAD_INBOX = """
+        SELECT id, user2 AS other_user, last_message, last_message_time FROM private_chats WHERE user1 = ? AND is_active
+        UNION ALL
+        SELECT id, user1, last_message, last_message_time FROM private_chats WHERE user2 = ? AND user1 <> ? AND is_active
+        """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UnreadCounters unreadCounters;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.inbox.cache.max-users:10000}")
+    private int maxUsers;
+
+    @Value("${chat.inbox.preview-chars:100}")
+    private int previewChars;
+
+    private record Conversation(long chatId, String lastMessage, LocalDateTime lastMessageTime) {}
+
+    private final LinkedHashMap<String, Map<String, Conversation>> inboxes = new LinkedHashMap<>(16, 0.75f, true);
+    private final long[] stamps = new long[STAMP_STRIPES];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void registerMetrics() {
+        FunctionCounter.builder("chat.inbox.requests", hits, AtomicLong::get)
+            .tag("result", "hit")
+            .description("Inboxes served from the cache")
+            .register(meterRegistry);
+        FunctionCounter.builder("chat.inbox.requests", misses, AtomicLong::get)
+            .tag("result", "miss")
+            .description("Inboxes that had to be loaded from the database")
+            .register(meterRegistry);
+        Gauge.builder("chat.inbox.users", this, service -> service.size())
+            .description("Users whose inbox is cached")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns the user's conversations, most recent first.
+     */
+    public List<InboxEntry> inbox(String username) {
+        Map<String, Conversation> conversations = cached(username);
+        if (conversations != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            long stamp = stamp(username);
+            conversations = load(username);
+            install(username, stamp, conversations);
+        }
+
+        Map<String, Long> unread = unreadCounters.snapshot(username).chats();
+        List<InboxEntry> entries = new ArrayList<>(conversations.size());
+        conversations.forEach((otherUser, conversation) -> entries.add(new InboxEntry(conversation.chatId(), otherUser,
+            conversation.lastMessage(), conversation.lastMessageTime(), unread.getOrDefault(otherUser, 0L))));
+        entries.sort(Comparator.comparing(InboxEntry::lastMessageTime, Comparator.nullsLast(Comparator.reverseOrder())));
+        return entries;
+    }
+
+    /**
+     * Records a private message in the cached inboxes of both participants.
+     */
+    public synchronized void messageSent(long chatId, String sender, String recipient, String content, LocalDateTime time) {
+        update(sender, recipient, chatId, content, time);
+        if (!sender.equals(recipient)) {
+            update(recipient, sender, chatId, content, time);
+        }
+    }
+
+    public synchronized void chatClosed(String user1, String user2) {
+        for (String username : new String[] {user1, user2}) {
+            stamps[stripe(username)]++;
+            Map<String, Conversation> conversations = inboxes.get(username);
+            if (conversations != null) {
+                conversations.remove(username.equals(user1) ? user2 : user1);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return inboxes.size();
+    }
+
+    private void update(String username, String otherUser, long chatId, String content, LocalDateTime time) {
+        stamps[stripe(username)]++;
+        Map<String, Conversation> conversations = inboxes.get(username);
+        if (conversations == null) {
+            return;
+        }
+        Conversation current = conversations.get(otherUser);
+        if (current == null || current.lastMessageTime() == null || !current.lastMessageTime().isAfter(time)) {
+            conversations.put(otherUser, new Conversation(chatId, preview(content), time));
+        }
+    }
+
+    private synchronized Map<String, Conversation> cached(String username) {
+        Map<String, Conversation> conversations = inboxes.get(username);
+        return conversations != null ? new HashMap<>(conversations) : null;
+    }
+
+    private synchronized long stamp(String username) {
+        return stamps[stripe(username)];
+    }
+
+    private synchronized void install(String username, long stamp, Map<String, Conversation> conversations) {
+        if (stamps[stripe(username)] != stamp) {
+            return;
+        }
+        inboxes.put(username, new HashMap<>(conversations));
+        Iterator<Map.Entry<String, Map<String, Conversation>>> eldest = inboxes.entrySet().iterator();
+        while (inboxes.size() > maxUsers) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private Map<String, Conversation> load(String username) {
+        Map<String, Conversation> conversations = new HashMap<>();
+        jdbcTemplate.query(LOAD_INBOX, rs -> {
+            Timestamp time = rs.getTimestamp("last_message_time");
+            conversations.put(rs.getString("other_user"), new Conversation(rs.getLong("id"),
+                preview(rs.getString("last_message")), time != null ? time.toLocalDateTime() : null));
+        }, username, username, username);
+        return conversations;
+    }
+
+    private String preview(String content) {
+        return content != null && content.length() > previewChars ? content.substring(0, previewChars) : content;
+    }
+
+    private static int stripe(String username) {
+        return username.hashCode() & (STAMP_STRIPES - 1);
+    }
+}
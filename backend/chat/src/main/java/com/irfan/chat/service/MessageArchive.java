@@ -0,0 +1,413 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.ChatMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold tier of message history: immutable segment files, each written once by
+ * the archiver and never modified. A segment holds deflate-compressed blocks of
+ * messages, every block belonging to one stream (a private chat, or
+ * {@link #GLOBAL_STREAM} for global and system messages) and sorted by
+ * (timestamp, id), followed by a sparse index with one entry per block and a footer.
+ *
+ * {@code [magic][block]...[index][long indexOffset][int indexLength][int indexCrc][magic]}
+ *
+ * Segments are memory-mapped and only their index is held on the heap; a read
+ * inflates just the blocks whose key range it needs. A message can be in more
+ * than one segment if the archiver stopped between writing a segment and
+ * deleting its rows, so readers drop repeated ids.
+ */
+class MessageArchive implements Closeable {
+
+    static final long GLOBAL_STREAM = 0;
+
+    /** Position of a message in its stream's (timestamp, id) order. */
+    record Key(LocalDateTime time, long id) implements Comparable<Key> {
+
+        static final Comparator<Key> ORDER = Comparator.comparing(Key::time).thenComparingLong(Key::id);
+
+        static Key of(ChatMessage message) {
+            return new Key(message.getTimestamp(), message.getId());
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    private record Block(long stream, MemorySegment segment, long offset, int length, int rawLength, int count,
+                         Key first, Key last, long minId, long maxId) {}
+
+    private static final String SUFFIX = ".segment";
+    private static final long MAGIC = 0x4348415453454731L; // "CHATSEG1"
+    private static final int FOOTER_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final Path dir;
+    private final int blockMessages;
+    private final Arena arena = Arena.ofShared();
+
+    // Blocks of each stream in order of their first key; replaced as a whole when a segment is added.
+    private volatile Map<Long, List<Block>> streams = Map.of();
+    private long nextSegment = 1;
+    private int segmentCount;
+
+    MessageArchive(Path dir, int blockMessages) {
+        this.dir = dir;
+        this.blockMessages = blockMessages;
+    }
+
+    /**
+     * Maps every segment in the directory and loads their indexes. Leftover
+     * temporary files from an interrupted write are removed.
+     */
+    synchronized void open() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(dir)) {
+            segments = files.sorted().toList();
+        }
+        Map<Long, List<Block>> loaded = new HashMap<>();
+        for (Path path : segments) {
+            String name = path.getFileName().toString();
+            if (!name.endsWith(SUFFIX)) {
+                if (name.endsWith(SUFFIX + ".tmp")) {
+                    Files.delete(path);
+                }
+                continue;
+            }
+            nextSegment = Math.max(nextSegment, Long.parseLong(name.substring(0, name.length() - SUFFIX.length())) + 1);
+            for (Block block : map(path)) {
+                loaded.computeIfAbsent(block.stream(), key -> new ArrayList<>()).add(block);
+            }
+            segmentCount++;
+        }
+        loaded.values().forEach(blocks -> blocks.sort(Comparator.comparing(Block::first)));
+        streams = loaded;
+    }
+
+    /**
+     * Writes the messages, grouped by stream, to a new segment and makes them
+     * readable. The segment is fsynced and renamed into place before this returns.
+     */
+    synchronized void append(Map<Long, List<ChatMessage>> messagesByStream) throws IOException {
+        Files.createDirectories(dir);
+        Path path = dir.resolve(String.format("%020d%s", nextSegment, SUFFIX));
+        Path tmp = dir.resolve(path.getFileName() + ".tmp");
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        int blocks = 0;
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long offset = write(channel, ByteBuffer.allocate(Long.BYTES).putLong(0, MAGIC));
+            for (Map.Entry<Long, List<ChatMessage>> stream : messagesByStream.entrySet()) {
+                List<ChatMessage> messages = new ArrayList<>(stream.getValue());
+                messages.sort(Comparator.comparing(Key::of));
+                for (int from = 0; from < messages.size(); from += blockMessages) {
+                    List<ChatMessage> chunk = messages.subList(from, Math.min(from + blockMessages, messages.size()));
+                    byte[] raw = encode(chunk);
+                    byte[] compressed = deflate(raw);
+                    long blockOffset = offset;
+                    offset += write(channel, ByteBuffer.wrap(compressed));
+
+                    indexOut.writeLong(stream.getKey());
+                    indexOut.writeLong(blockOffset);
+                    indexOut.writeInt(compressed.length);
+                    indexOut.writeInt(raw.length);
+                    indexOut.writeInt(chunk.size());
+                    writeKey(indexOut, Key.of(chunk.get(0)));
+                    writeKey(indexOut, Key.of(chunk.get(chunk.size() - 1)));
+                    indexOut.writeLong(chunk.stream().mapToLong(ChatMessage::getId).min().orElseThrow());
+                    indexOut.writeLong(chunk.stream().mapToLong(ChatMessage::getId).max().orElseThrow());
+                    blocks++;
+                }
+            }
+            indexOut.flush();
+
+            byte[] indexBytes = index.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(indexBytes);
+            write(channel, ByteBuffer.wrap(indexBytes));
+            write(channel, ByteBuffer.allocate(FOOTER_BYTES)
+                .putLong(offset).putInt(indexBytes.length).putInt((int) crc.getValue()).putLong(MAGIC).flip());
+            channel.force(true);
+        }
+        if (blocks == 0) {
+            Files.delete(tmp);
+            return;
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        nextSegment++;
+
+        Map<Long, List<Block>> updated = new HashMap<>(streams);
+        for (Block block : map(path)) {
+            List<Block> merged = new ArrayList<>(updated.getOrDefault(block.stream(), List.of()));
+            merged.add(block);
+            merged.sort(Comparator.comparing(Block::first));
+            updated.put(block.stream(), merged);
+        }
+        streams = updated;
+        segmentCount++;
+    }
+
+    boolean contains(long stream) {
+        return streams.containsKey(stream);
+    }
+
+    /** The newest key archived for the stream, or null if it has nothing archived. */
+    Key newest(long stream) {
+        Key newest = null;
+        for (Block block : streams.getOrDefault(stream, List.of())) {
+            if (newest == null || block.last().compareTo(newest) > 0) {
+                newest = block.last();
+            }
+        }
+        return newest;
+    }
+
+    /** Looks up an archived message's key by id. */
+    Key keyOf(long stream, long id) throws IOException {
+        for (Block block : streams.getOrDefault(stream, List.of())) {
+            if (id >= block.minId() && id <= block.maxId()) {
+                for (ChatMessage message : decode(block)) {
+                    if (message.getId() == id) {
+                        return Key.of(message);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Up to {@code limit} archived messages of the stream older than {@code before}
+     * (or the newest ones when it is null), newest first.
+     */
+    List<ChatMessage> before(long stream, Key before, int limit) throws IOException {
+        List<Block> candidates = new ArrayList<>();
+        for (Block block : streams.getOrDefault(stream, List.of())) {
+            if (before == null || block.first().compareTo(before) < 0) {
+                candidates.add(block);
+            }
+        }
+        candidates.sort(Comparator.comparing(Block::last).reversed());
+
+        Map<Long, ChatMessage> found = new LinkedHashMap<>();
+        List<ChatMessage> result = List.of();
+        for (Block block : candidates) {
+            // blocks further down hold nothing newer than the oldest message already kept
+            if (result.size() >= limit && block.last().compareTo(Key.of(result.get(limit - 1))) < 0) {
+                break;
+            }
+            for (ChatMessage message : decode(block)) {
+                if (before == null || Key.of(message).compareTo(before) < 0) {
+                    found.putIfAbsent(message.getId(), message);
+                }
+            }
+            result = newestFirst(found.values(), limit);
+        }
+        return result;
+    }
+
+    /** Up to {@code limit} archived messages of the stream newer than {@code after}, oldest first. */
+    List<ChatMessage> after(long stream, Key after, int limit) throws IOException {
+        Map<Long, ChatMessage> found = new LinkedHashMap<>();
+        List<ChatMessage> result = List.of();
+        for (Block block : streams.getOrDefault(stream, List.of())) {
+            if (block.last().compareTo(after) <= 0) {
+                continue;
+            }
+            if (result.size() >= limit && block.first().compareTo(Key.of(result.get(limit - 1))) > 0) {
+                break;
+            }
+            for (ChatMessage message : decode(block)) {
+                if (Key.of(message).compareTo(after) > 0) {
+                    found.putIfAbsent(message.getId(), message);
+                }
+            }
+            result = found.values().stream().sorted(Comparator.comparing(Key::of)).limit(limit).toList();
+        }
+        return result;
+    }
+
+    synchronized int segments() {
+        return segmentCount;
+    }
+
+    @Override
+    public synchronized void close() {
+        streams = Map.of();
+        arena.close();
+    }
+
+    static List<ChatMessage> newestFirst(Iterable<ChatMessage> messages, int limit) {
+        List<ChatMessage> sorted = new ArrayList<>();
+        messages.forEach(sorted::add);
+        sorted.sort(Comparator.comparing(Key::of).reversed());
+        return sorted.size() > limit ? new ArrayList<>(sorted.subList(0, limit)) : sorted;
+    }
+
+    private List<Block> map(Path path) throws IOException {
+        MemorySegment segment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+        ByteBuffer footer = segment.asSlice(segment.byteSize() - FOOTER_BYTES).asByteBuffer();
+        long indexOffset = footer.getLong();
+        int indexLength = footer.getInt();
+        int indexCrc = footer.getInt();
+        if (footer.getLong() != MAGIC || segment.asByteBuffer().getLong(0) != MAGIC) {
+            throw new IOException("Not a message archive segment: " + path);
+        }
+        byte[] index = segment.asSlice(indexOffset, indexLength).toArray(ValueLayout.JAVA_BYTE);
+        CRC32 crc = new CRC32();
+        crc.update(index);
+        if ((int) crc.getValue() != indexCrc) {
+            throw new IOException("Corrupt index in archive segment " + path);
+        }
+
+        List<Block> blocks = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+        while (in.available() > 0) {
+            blocks.add(new Block(in.readLong(), segment, in.readLong(), in.readInt(), in.readInt(), in.readInt(),
+                readKey(in), readKey(in), in.readLong(), in.readLong()));
+        }
+        return blocks;
+    }
+
+    private static List<ChatMessage> decode(Block block) throws IOException {
+        byte[] raw = new byte[block.rawLength()];
+        Inflater inflater = new Inflater();
+        try {
+            // Inflater cannot read from a shared arena's memory directly, so the compressed block is copied out
+            inflater.setInput(block.segment().asSlice(block.offset(), block.length()).toArray(ValueLayout.JAVA_BYTE));
+            if (inflater.inflate(raw) != raw.length) {
+                throw new IOException("Truncated archive block at offset " + block.offset());
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive block at offset " + block.offset(), e);
+        } finally {
+            inflater.end();
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        List<ChatMessage> messages = new ArrayList<>(block.count());
+        for (int i = 0; i < block.count(); i++) {
+            ChatMessage message = new ChatMessage();
+            message.setId(in.readLong());
+            message.setTimestamp(readTime(in));
+            message.setMessageType(ChatMessage.MessageType.valueOf(readString(in)));
+            message.setSender(readString(in));
+            message.setRecipient(readString(in));
+            message.setContent(readString(in));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static byte[] encode(List<ChatMessage> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(messages.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (ChatMessage message : messages) {
+            out.writeLong(message.getId());
+            writeTime(out, message.getTimestamp());
+            writeString(out, message.getMessageType().name());
+            writeString(out, message.getSender());
+            writeString(out, message.getRecipient());
+            writeString(out, message.getContent());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static long write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        return written;
+    }
+
+    private static void writeKey(DataOutputStream out, Key key) throws IOException {
+        writeTime(out, key.time());
+        out.writeLong(key.id());
+    }
+
+    private static Key readKey(DataInputStream in) throws IOException {
+        return new Key(readTime(in), in.readLong());
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,264 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves messages older than {@code older-than-days} out of the {@code messages}
+ * table into {@link MessageArchive} segments, and reads history across both
+ * tiers. A batch is written to a segment first and only then deleted from the
+ * table, so a message is always in at least one tier; while it is in both, the
+ * table's copy wins.
+ *
+ * Reads only come here for a chat (or the global stream) that has something
+ * archived. The cursor message is looked up in whichever tier holds it, the page
+ * is read from the table by (timestamp, id), and the archive is consulted only
+ * when the table alone does not fill the page past its newest archived message.
+ */
+@Service
+public class MessageArchiveService {
+
+    // BRIN stays tiny on an insert-ordered table and lets the archiver find old rows without a scan.
+    private static final String CREATE_TIME_INDEX =
+        "CREATE INDEX IF NOT EXISTS idx_messages_created_brin ON messages USING brin (created_at)";
+
+    // Any batch of old rows will do; the segment sorts each stream as it is written.
+    private static final String SELECT_ARCHIVABLE = """
+        SELECT id, content, sender, recipient, message_type, created_at, private_chat_id FROM messages
+        WHERE created_at < ? AND (message_type IN ('GLOBAL', 'SYSTEM') OR private_chat_id IS NOT NULL)
+        LIMIT ?
+        """;
+
+    private static final String DELETE_ARCHIVED = "DELETE FROM messages WHERE id = ANY(?)";
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.messages.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.messages.archive.dir:data/archive}")
+    private String archiveDir;
+
+    @Value("${chat.messages.archive.older-than-days:30}")
+    private int olderThanDays;
+
+    @Value("${chat.messages.archive.batch-size:50000}")
+    private int batchSize;
+
+    @Value("${chat.messages.archive.block-messages:256}")
+    private int blockMessages;
+
+    private MessageArchive archive;
+    private Counter archivedMessages;
+    private Timer runDuration;
+
+    @PostConstruct
+    public void start() throws IOException {
+        archivedMessages = Counter.builder("chat.messages.archive.archived")
+            .description("Messages moved from the database into archive segments")
+            .register(meterRegistry);
+        runDuration = Timer.builder("chat.messages.archive.duration")
+            .description("Time taken by one archiver run")
+            .register(meterRegistry);
+        Gauge.builder("chat.messages.archive.segments", this, service -> service.archive.segments())
+            .description("Archive segment files currently mapped")
+            .register(meterRegistry);
+
+        archive = new MessageArchive(Path.of(archiveDir), blockMessages);
+        archive.open();
+        if (enabled) {
+            try {
+                jdbcTemplate.execute(CREATE_TIME_INDEX);
+            } catch (Exception e) {
+                System.err.println("Could not create the archiver's time index (see db-migration.sql): " + e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        archive.close();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.messages.archive.interval-ms:3600000}",
+               initialDelayString = "${chat.messages.archive.interval-ms:3600000}")
+    public void archiveExpired() {
+        if (enabled) {
+            archiveOlderThan(LocalDateTime.now().minusDays(olderThanDays));
+        }
+    }
+
+    /**
+     * Archives every global message and every message of a private chat sent
+     * before {@code cutoff}, one segment per batch. Returns how many were moved.
+     */
+    public synchronized long archiveOlderThan(LocalDateTime cutoff) {
+        long start = System.nanoTime();
+        long moved = 0;
+        try {
+            while (true) {
+                Map<Long, List<ChatMessage>> batch = new HashMap<>();
+                List<Long> ids = new ArrayList<>();
+                jdbcTemplate.query(SELECT_ARCHIVABLE, rs -> {
+                    ChatMessage message = new ChatMessage();
+                    message.setId(rs.getLong("id"));
+                    message.setContent(rs.getString("content"));
+                    message.setSender(rs.getString("sender"));
+                    message.setRecipient(rs.getString("recipient"));
+                    message.setMessageType(ChatMessage.MessageType.valueOf(rs.getString("message_type")));
+                    message.setTimestamp(rs.getTimestamp("created_at").toLocalDateTime());
+                    long chatId = rs.getLong("private_chat_id");
+                    batch.computeIfAbsent(rs.wasNull() ? MessageArchive.GLOBAL_STREAM : chatId, key -> new ArrayList<>()).add(message);
+                    ids.add(message.getId());
+                }, Timestamp.valueOf(cutoff), batchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+
+                archive.append(batch);
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement ps = connection.prepareStatement(DELETE_ARCHIVED);
+                    ps.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+                    return ps;
+                });
+                archivedMessages.increment(ids.size());
+                moved += ids.size();
+                if (ids.size() < batchSize) {
+                    break;
+                }
+            }
+            if (moved > 0) {
+                System.out.println("Archived " + moved + " messages older than " + cutoff);
+            }
+        } catch (Exception e) {
+            System.err.println("Error archiving messages: " + e.getMessage());
+        } finally {
+            runDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return moved;
+    }
+
+    /**
+     * Whether any history of the chat, or of the global stream when {@code chatId}
+     * is null, has been archived.
+     */
+    public boolean holds(Long chatId) {
+        return archive.contains(stream(chatId));
+    }
+
+    /**
+     * Up to {@code limit} messages older than the cursor (the latest ones without
+     * one), newest first. {@code beforeId} takes precedence over {@code beforeTime}.
+     */
+    public List<ChatMessage> before(Long chatId, Long beforeId, LocalDateTime beforeTime, int limit) {
+        long stream = stream(chatId);
+        MessageArchive.Key cursor = null;
+        if (beforeId != null) {
+            cursor = keyOf(stream, beforeId);
+            if (cursor == null) {
+                return List.of();
+            }
+        } else if (beforeTime != null) {
+            cursor = new MessageArchive.Key(beforeTime, Long.MIN_VALUE);
+        }
+
+        List<ChatMessage> hot;
+        if (cursor == null) {
+            hot = chatId == null ? messageRepository.findLatestGlobalMessages(limit) : messageRepository.findLatestChatMessages(chatId, limit);
+        } else if (chatId == null) {
+            hot = messageRepository.findGlobalMessagesBeforeKey(cursor.time(), cursor.id(), limit);
+        } else {
+            hot = messageRepository.findChatMessagesBeforeKey(chatId, cursor.time(), cursor.id(), limit);
+        }
+
+        MessageArchive.Key newestArchived = archive.newest(stream);
+        if (newestArchived == null || hot.size() >= limit && MessageArchive.Key.of(hot.get(limit - 1)).compareTo(newestArchived) > 0) {
+            return hot;
+        }
+        try {
+            return MessageArchive.newestFirst(merge(hot, archive.before(stream, cursor, limit)), limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading message archive", e);
+        }
+    }
+
+    /**
+     * Up to {@code limit} messages of the chat newer than {@code afterId}, oldest first.
+     */
+    public List<ChatMessage> after(Long chatId, Long afterId, int limit) {
+        long stream = stream(chatId);
+        MessageArchive.Key cursor = keyOf(stream, afterId);
+        if (cursor == null) {
+            return List.of();
+        }
+        List<ChatMessage> hot = messageRepository.findChatMessagesAfterKey(chatId, cursor.time(), cursor.id(), limit);
+
+        MessageArchive.Key newestArchived = archive.newest(stream);
+        if (newestArchived == null || newestArchived.compareTo(cursor) <= 0) {
+            return hot;
+        }
+        try {
+            List<ChatMessage> merged = new ArrayList<>(merge(hot, archive.after(stream, cursor, limit)));
+            merged.sort(Comparator.comparing(MessageArchive.Key::of));
+            return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading message archive", e);
+        }
+    }
+
+    private MessageArchive.Key keyOf(long stream, long id) {
+        List<LocalDateTime> hot = jdbcTemplate.queryForList("SELECT created_at FROM messages WHERE id = ?", LocalDateTime.class, id);
+        if (!hot.isEmpty()) {
+            return new MessageArchive.Key(hot.get(0), id);
+        }
+        try {
+            return archive.keyOf(stream, id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading message archive", e);
+        }
+    }
+
+    private static Collection<ChatMessage> merge(List<ChatMessage> hot, List<ChatMessage> cold) {
+        Map<Long, ChatMessage> byId = new LinkedHashMap<>();
+        hot.forEach(message -> byId.put(message.getId(), message));
+        cold.forEach(message -> byId.putIfAbsent(message.getId(), message));
+        return byId.values();
+    }
+
+    private static long stream(Long chatId) {
+        return chatId != null ? chatId : MessageArchive.GLOBAL_STREAM;
+    }
+}
@@ -0,0 +1,344 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.ChatMessage;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented message journal. A single writer thread group-commits
+ * pending appends: one write and one fsync per batch, after which the appends
+ * are acknowledged and handed to the durable-entry consumer in sequence order.
+ *
+ * Each record is {@code [int length][int crc32][payload]}; a torn record at the
+ * tail of the last segment is truncated on open.
+ */
+class MessageJournal implements Closeable {
+
+    record Entry(long seq, long id, String content, String sender, String recipient, String messageType,
+                 LocalDateTime timestamp, Long userId, Long privateChatId) {
+
+        static Entry of(ChatMessage message) {
+            return new Entry(
+                0,
+                message.getId(),
+                message.getContent(),
+                message.getSender(),
+                message.getRecipient(),
+                message.getMessageType().name(),
+                message.getTimestamp(),
+                message.getUser() != null ? message.getUser().getId() : null,
+                message.getPrivateChat() != null ? message.getPrivateChat().getId() : null
+            );
+        }
+
+        Entry withSeq(long seq) {
+            return new Entry(seq, id, content, sender, recipient, messageType, timestamp, userId, privateChatId);
+        }
+    }
+
+    private record PendingAppend(Entry entry, CompletableFuture<Long> ack, long enqueuedAt) {}
+
+    private static final String SUFFIX = ".journal";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final int maxSyncBatch;
+    private final Consumer<List<Entry>> onDurable;
+    private final Timer ackLatency;
+
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final BlockingQueue<PendingAppend> appends = new LinkedBlockingQueue<>();
+
+    private FileChannel channel;
+    private volatile long activeSegment;
+    private long activeSize;
+    private long nextSeq;
+
+    private Thread writer;
+    private volatile boolean running;
+
+    MessageJournal(Path dir, long segmentBytes, int maxSyncBatch, Consumer<List<Entry>> onDurable, Timer ackLatency) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSyncBatch = maxSyncBatch;
+        this.onDurable = onDurable;
+        this.ackLatency = ackLatency;
+    }
+
+    /**
+     * Reads every segment and returns the entries written after {@code checkpoint},
+     * then starts a fresh segment for new appends. Must be called before {@link #start()}.
+     */
+    List<Entry> open(long checkpoint) throws IOException {
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                .forEach(path -> segments.put(firstSeqOf(path), path));
+        }
+
+        List<Entry> unflushed = new ArrayList<>();
+        long lastSeq = checkpoint;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            boolean last = segment.getKey().equals(segments.lastKey());
+            for (Entry entry : readSegment(segment.getValue(), last)) {
+                lastSeq = Math.max(lastSeq, entry.seq());
+                if (entry.seq() > checkpoint) {
+                    unflushed.add(entry);
+                }
+            }
+        }
+
+        nextSeq = lastSeq + 1;
+        openSegment(nextSeq);
+        return unflushed;
+    }
+
+    void start() {
+        running = true;
+        writer = new Thread(this::runWriter, "message-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    CompletableFuture<Long> append(Entry entry) {
+        if (!running) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Message journal is not running"));
+        }
+        CompletableFuture<Long> ack = new CompletableFuture<>();
+        appends.add(new PendingAppend(entry, ack, System.nanoTime()));
+        return ack;
+    }
+
+    /**
+     * Deletes closed segments whose records are all at or below {@code checkpoint}.
+     */
+    void discardUpTo(long checkpoint) {
+        for (Long first : segments.headMap(activeSegment, false).keySet()) {
+            Long next = segments.higherKey(first);
+            if (next != null && next - 1 <= checkpoint) {
+                try {
+                    Files.deleteIfExists(segments.remove(first));
+                } catch (IOException e) {
+                    System.err.println("Error deleting journal segment " + first + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void runWriter() {
+        List<PendingAppend> batch = new ArrayList<>(maxSyncBatch);
+        while (running || !appends.isEmpty()) {
+            try {
+                PendingAppend first = appends.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                appends.drainTo(batch, maxSyncBatch - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Error writing message journal: " + e.getMessage());
+                batch.forEach(pending -> pending.ack().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingAppend> batch) throws IOException {
+        if (activeSize >= segmentBytes) {
+            channel.close();
+            openSegment(nextSeq);
+        }
+
+        List<Entry> entries = new ArrayList<>(batch.size());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() * 256);
+        for (PendingAppend pending : batch) {
+            Entry entry = pending.entry().withSeq(nextSeq++);
+            entries.add(entry);
+            writeRecord(bytes, entry);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            channel.truncate(activeSize);
+            throw e;
+        }
+        activeSize += buffer.capacity();
+
+        onDurable.accept(entries);
+
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            PendingAppend pending = batch.get(i);
+            ackLatency.record(now - pending.enqueuedAt(), TimeUnit.NANOSECONDS);
+            pending.ack().complete(entries.get(i).seq());
+        }
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        Path path = dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeSize = channel.size();
+        segments.put(firstSeq, path);
+        activeSegment = firstSeq;
+    }
+
+    private static long firstSeqOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static void writeRecord(ByteArrayOutputStream out, Entry entry) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(256);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeLong(entry.seq());
+        payload.writeLong(entry.id());
+        writeString(payload, entry.content());
+        writeString(payload, entry.sender());
+        writeString(payload, entry.recipient());
+        writeString(payload, entry.messageType());
+        payload.writeLong(entry.timestamp().toEpochSecond(ZoneOffset.UTC));
+        payload.writeInt(entry.timestamp().getNano());
+        payload.writeLong(entry.userId() != null ? entry.userId() : -1);
+        payload.writeLong(entry.privateChatId() != null ? entry.privateChatId() : -1);
+        payload.flush();
+
+        byte[] body = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        DataOutputStream record = new DataOutputStream(out);
+        record.writeInt(body.length);
+        record.writeInt((int) crc.getValue());
+        record.write(body);
+        record.flush();
+    }
+
+    private static List<Entry> readSegment(Path path, boolean last) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long validBytes = 0;
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    if (length < 0 || length > MAX_RECORD_BYTES) {
+                        throw new EOFException("Invalid journal record length " + length);
+                    }
+                    int expectedCrc = in.readInt();
+                    byte[] body = in.readNBytes(length);
+                    CRC32 crc = new CRC32();
+                    crc.update(body);
+                    if (body.length != length || (int) crc.getValue() != expectedCrc) {
+                        throw new EOFException("Torn journal record");
+                    }
+                    entries.add(readEntry(body));
+                    validBytes += RECORD_HEADER_BYTES + length;
+                } catch (EOFException e) {
+                    if (!last) {
+                        throw new IOException("Corrupt journal segment " + path, e);
+                    }
+                    System.err.println("Truncating torn record at offset " + validBytes + " of " + path);
+                    try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        truncate.truncate(validBytes);
+                    }
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static Entry readEntry(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        long seq = in.readLong();
+        long id = in.readLong();
+        String content = readString(in);
+        String sender = readString(in);
+        String recipient = readString(in);
+        String messageType = readString(in);
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        long userId = in.readLong();
+        long privateChatId = in.readLong();
+        return new Entry(seq, id, content, sender, recipient, messageType, timestamp,
+            userId >= 0 ? userId : null, privateChatId >= 0 ? privateChatId : null);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,262 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists chat messages either synchronously through {@link MessageRepository}
+ * or, with {@code chat.messages.write-behind.enabled}, by appending them to a
+ * local {@link MessageJournal} and flushing them to the {@code messages} table in
+ * batches. The last flushed journal sequence is committed together with each
+ * batch, so replay after a restart neither loses nor duplicates messages.
+ */
+@Service
+public class MessagePersistenceService {
+
+    private static final String CREATE_CHECKPOINT_TABLE =
+        "CREATE TABLE IF NOT EXISTS message_journal_checkpoint (id INT PRIMARY KEY, last_seq BIGINT NOT NULL)";
+
+    private static final String INSERT_MESSAGE =
+        "INSERT INTO messages (id, content, sender, recipient, message_type, created_at, user_id, private_chat_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_CHAT_LAST_MESSAGE =
+        "UPDATE private_chats SET last_message = ?, last_message_time = ? WHERE id = ? AND (last_message_time IS NULL OR last_message_time <= ?)";
+
+    // Inserts a private message and moves its chat's last message forward in the same statement.
+    private static final String INSERT_PRIVATE_MESSAGE = """
+        WITH inserted AS (
+            INSERT INTO messages (id, content, sender, recipient, message_type, created_at, user_id, private_chat_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            RETURNING private_chat_id, content, created_at
+        )
+        UPDATE private_chats c SET last_message = i.content, last_message_time = i.created_at
+        FROM inserted i
+        WHERE c.id = i.private_chat_id AND (c.last_message_time IS NULL OR c.last_message_time <= i.created_at)
+        """;
+
+    private static final String SAVE_CHECKPOINT =
+        "INSERT INTO message_journal_checkpoint (id, last_seq) VALUES (1, ?) ON CONFLICT (id) DO UPDATE SET last_seq = EXCLUDED.last_seq";
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private SequenceIdAllocator sequenceIdAllocator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.messages.write-behind.enabled:false}")
+    private boolean writeBehind;
+
+    @Value("${chat.messages.write-behind.batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${chat.messages.write-behind.flush-interval-ms:100}")
+    private long flushIntervalMs;
+
+    @Value("${chat.messages.journal.dir:data/journal}")
+    private String journalDir;
+
+    @Value("${chat.messages.journal.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${chat.messages.journal.max-sync-batch:256}")
+    private int maxSyncBatch;
+
+    private MessageJournal journal;
+    private final BlockingQueue<MessageJournal.Entry> unflushed = new LinkedBlockingQueue<>();
+    private DistributionSummary flushBatchSizes;
+    private Thread flusher;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!writeBehind) {
+            return;
+        }
+
+        Timer ackLatency = Timer.builder("chat.messages.journal.ack.latency")
+            .description("Time from append until the journal record is fsynced")
+            .register(meterRegistry);
+        flushBatchSizes = DistributionSummary.builder("chat.messages.write-behind.flush.batch.size")
+            .description("Journaled messages written to the database per flush")
+            .register(meterRegistry);
+        Gauge.builder("chat.messages.write-behind.pending", unflushed, BlockingQueue::size)
+            .description("Journaled messages not yet flushed to the database")
+            .register(meterRegistry);
+
+        jdbcTemplate.execute(CREATE_CHECKPOINT_TABLE);
+        List<Long> checkpoint = jdbcTemplate.queryForList("SELECT last_seq FROM message_journal_checkpoint WHERE id = 1", Long.class);
+
+        journal = new MessageJournal(Path.of(journalDir), segmentBytes, maxSyncBatch, unflushed::addAll, ackLatency);
+        List<MessageJournal.Entry> replay = journal.open(checkpoint.isEmpty() ? 0 : checkpoint.get(0));
+        if (!replay.isEmpty()) {
+            System.out.println("Replaying " + replay.size() + " journaled messages");
+            unflushed.addAll(replay);
+        }
+        journal.start();
+
+        running = true;
+        flusher = new Thread(this::runFlusher, "message-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (!writeBehind) {
+            return;
+        }
+        journal.close();
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Returns once the message is durable: committed to the database, or fsynced
+     * to the journal in write-behind mode. Either way the returned message has its id.
+     */
+    public ChatMessage save(ChatMessage message) {
+        if (!writeBehind) {
+            return messageRepository.save(message);
+        }
+        message.setId(sequenceIdAllocator.nextId("messages_seq"));
+        journal.append(MessageJournal.Entry.of(message)).join();
+        return message;
+    }
+
+    /**
+     * Like {@link #save}, and also makes the message its chat's last message. Outside
+     * write-behind mode this is one statement, so concurrent senders into a chat
+     * hold its row only while that statement runs.
+     */
+    public ChatMessage savePrivate(ChatMessage message) {
+        if (writeBehind) {
+            return save(message);
+        }
+        message.setId(sequenceIdAllocator.nextId("messages_seq"));
+        jdbcTemplate.update(INSERT_PRIVATE_MESSAGE,
+            message.getId(),
+            message.getContent(),
+            message.getSender(),
+            message.getRecipient(),
+            message.getMessageType().name(),
+            Timestamp.valueOf(message.getTimestamp()),
+            message.getUser() != null ? message.getUser().getId() : null,
+            message.getPrivateChat().getId());
+        return message;
+    }
+
+    private void runFlusher() {
+        List<MessageJournal.Entry> batch = new ArrayList<>(flushBatchSize);
+        while (running || !unflushed.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    MessageJournal.Entry first = unflushed.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    unflushed.drainTo(batch, flushBatchSize - 1);
+                }
+                flush(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Error flushing journaled messages, retrying: " + e.getMessage());
+                if (!running) {
+                    return;
+                }
+                try {
+                    Thread.sleep(flushIntervalMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void flush(List<MessageJournal.Entry> batch) {
+        Map<Long, MessageJournal.Entry> latestPerChat = new LinkedHashMap<>();
+        for (MessageJournal.Entry entry : batch) {
+            if (entry.privateChatId() != null) {
+                latestPerChat.put(entry.privateChatId(), entry);
+            }
+        }
+        long lastSeq = batch.get(batch.size() - 1).seq();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_MESSAGE, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    MessageJournal.Entry entry = batch.get(i);
+                    ps.setLong(1, entry.id());
+                    ps.setString(2, entry.content());
+                    ps.setString(3, entry.sender());
+                    ps.setString(4, entry.recipient());
+                    ps.setString(5, entry.messageType());
+                    ps.setTimestamp(6, Timestamp.valueOf(entry.timestamp()));
+                    ps.setObject(7, entry.userId(), Types.BIGINT);
+                    ps.setObject(8, entry.privateChatId(), Types.BIGINT);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batch.size();
+                }
+            });
+            if (!latestPerChat.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_CHAT_LAST_MESSAGE, latestPerChat.values(), latestPerChat.size(), (ps, entry) -> {
+                    ps.setString(1, entry.content());
+                    ps.setTimestamp(2, Timestamp.valueOf(entry.timestamp()));
+                    ps.setLong(3, entry.privateChatId());
+                    ps.setTimestamp(4, Timestamp.valueOf(entry.timestamp()));
+                });
+            }
+            jdbcTemplate.update(SAVE_CHECKPOINT, lastSeq);
+        });
+
+        flushBatchSizes.record(batch.size());
+        journal.discardUpTo(lastSeq);
+    }
+}
@@ -0,0 +1,119 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.SearchHit;
+import com.irfan.chat.dto.SearchPage;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full-text search over message history. Every message carries a stored
+ * {@code search_vector} that Postgres generates from its content on insert, and
+ * a GIN index over it answers the match. A user sees global messages and the
+ * messages of private chats they take part in; results are ranked with
+ * {@code ts_rank} and paged with a (rank, timestamp, id) cursor.
+ *
+ * The column and index come from db-migration.sql, which builds the index
+ * concurrently; adding them at startup would rewrite a large table under an
+ * exclusive lock. Startup only checks that the column exists, and search is
+ * unavailable until it does.
+ */
+@Service
+public class MessageSearchService {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final String HAS_SEARCH_VECTOR =
+        "SELECT EXISTS (SELECT 1 FROM information_schema.columns"
+            + " WHERE table_schema = current_schema() AND table_name = 'messages' AND column_name = 'search_vector')";
+
+    private static final String RANK = "ts_rank(search_vector, websearch_to_tsquery('english', ?))";
+
+    private static final String SEARCH_SELECT =
+        "SELECT id, content, sender, recipient, message_type, created_at, private_chat_id, " + RANK + " AS rank"
+            + " FROM messages WHERE search_vector @@ websearch_to_tsquery('english', ?)"
+            + " AND (message_type IN ('GLOBAL', 'SYSTEM') OR private_chat_id IN ("
+            + "SELECT id FROM private_chats WHERE user1 = ? UNION ALL SELECT id FROM private_chats WHERE user2 = ?))";
+
+    private static final RowMapper<SearchHit> SEARCH_HIT = (rs, row) -> new SearchHit(
+        rs.getLong("id"),
+        rs.getString("content"),
+        rs.getString("sender"),
+        rs.getString("recipient"),
+        rs.getString("message_type"),
+        rs.getTimestamp("created_at").toLocalDateTime(),
+        rs.getObject("private_chat_id", Long.class),
+        rs.getFloat("rank"));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile boolean available;
+
+    @PostConstruct
+    public void checkSearchIndex() {
+        try {
+            available = Boolean.TRUE.equals(jdbcTemplate.queryForObject(HAS_SEARCH_VECTOR, Boolean.class));
+        } catch (Exception e) {
+            available = false;
+            System.err.println("Could not check for message search: " + e.getMessage());
+        }
+        if (!available) {
+            System.err.println("Message search is unavailable: messages.search_vector is missing, run db-migration.sql");
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns the messages visible to {@code username} that match {@code query},
+     * which takes web search syntax: quoted phrases, {@code or} and {@code -word}.
+     * Throws {@link IllegalStateException} when the search column is missing.
+     */
+    public SearchPage search(String username, String query, String before, int limit) {
+        if (!available) {
+            throw new IllegalStateException("Message search is unavailable until db-migration.sql has been run");
+        }
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query must not be empty");
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        StringBuilder sql = new StringBuilder(SEARCH_SELECT);
+        List<Object> args = new ArrayList<>(List.of(query, query, username, username));
+        if (before != null) {
+            String[] parts = before.split("_", 3);
+            try {
+                float rank = Float.parseFloat(parts[0]);
+                Timestamp timestamp = Timestamp.valueOf(LocalDateTime.parse(parts[1]));
+                long id = Long.parseLong(parts[2]);
+                sql.append(" AND (").append(RANK).append(", created_at, id) < (?, ?, ?)");
+                args.addAll(List.of(query, rank, timestamp, id));
+            } catch (ArrayIndexOutOfBoundsException | DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid search cursor: " + before);
+            }
+        }
+        sql.append(" ORDER BY rank DESC, created_at DESC, id DESC LIMIT ?");
+        args.add(pageSize + 1);
+
+        List<SearchHit> hits = jdbcTemplate.query(sql.toString(), SEARCH_HIT, args.toArray());
+        boolean hasMore = hits.size() > pageSize;
+        List<SearchHit> page = new ArrayList<>(hits.subList(0, Math.min(pageSize, hits.size())));
+        String nextCursor = null;
+        if (hasMore) {
+            SearchHit last = page.get(page.size() - 1);
+            nextCursor = last.rank() + "_" + last.timestamp() + "_" + last.id();
+        }
+        return new SearchPage(page, nextCursor, hasMore);
+    }
+}
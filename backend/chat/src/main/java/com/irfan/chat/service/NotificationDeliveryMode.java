@@ -0,0 +1,10 @@
+package com.irfan.chat.service;
+
+public enum NotificationDeliveryMode {
+
+    /** Deliver each notification only to its recipient's {@code /user/queue/notifications}. */
+    TARGETED,
+
+    /** Targeted delivery plus a copy on {@code /topic/notifications-debug}, for diagnostics only. */
+    DEBUG
+}
@@ -0,0 +1,136 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.Notification;
+import com.irfan.chat.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves global-message notification fan-out off the STOMP inbound thread.
+ * Jobs are queued in a bounded queue and a single worker writes the rows as
+ * batched inserts and delivers each chunk once it has been persisted.
+ */
+@Service
+public class NotificationFanoutService {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private NotificationService notificationService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.fanout.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${chat.fanout.batch-size:500}")
+    private int batchSize;
+
+    private BlockingQueue<FanoutJob> queue;
+    private Thread worker;
+    private volatile boolean running;
+
+    private Counter rejectedJobs;
+    private Counter fannedOutNotifications;
+    private Timer lag;
+
+    private record FanoutJob(String sender, String content, long enqueuedAt) {}
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("chat.fanout.queue.depth", queue, BlockingQueue::size)
+            .description("Global message fan-out jobs waiting for the worker")
+            .register(meterRegistry);
+        rejectedJobs = Counter.builder("chat.fanout.rejected")
+            .description("Fan-out jobs dropped because the queue was full")
+            .register(meterRegistry);
+        fannedOutNotifications = Counter.builder("chat.fanout.notifications")
+            .description("Notifications written and delivered by the fan-out worker")
+            .register(meterRegistry);
+        lag = Timer.builder("chat.fanout.lag")
+            .description("Time from enqueue until every recipient of a job was delivered")
+            .register(meterRegistry);
+
+        running = true;
+        worker = new Thread(this::runWorker, "notification-fanout");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    public boolean submitGlobalMessage(String sender, String content) {
+        boolean accepted = queue.offer(new FanoutJob(sender, content, System.nanoTime()));
+        if (!accepted) {
+            rejectedJobs.increment();
+            System.err.println("Notification fan-out queue is full, dropping notifications for message from " + sender);
+        }
+        return accepted;
+    }
+
+    private void runWorker() {
+        while (running || !queue.isEmpty()) {
+            try {
+                FanoutJob job = queue.poll(1, TimeUnit.SECONDS);
+                if (job != null) {
+                    process(job);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Error fanning out notifications: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void process(FanoutJob job) {
+        List<String> recipients = userService.getOnlineUsers().stream()
+            .map(User::getUsername)
+            .filter(username -> !username.equals(job.sender()))
+            .toList();
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < recipients.size(); from += batchSize) {
+            List<Notification> chunk = new ArrayList<>();
+            for (String recipient : recipients.subList(from, Math.min(from + batchSize, recipients.size()))) {
+                Notification notification = new Notification(recipient, job.sender(), job.content(), "GLOBAL", "general", "MESSAGE");
+                notification.setTimestamp(now);
+                chunk.add(notification);
+            }
+
+            transactionTemplate.executeWithoutResult(status -> notificationService.save(chunk));
+            chunk.forEach(notificationService::deliver);
+            fannedOutNotifications.increment(chunk.size());
+        }
+
+        lag.record(System.nanoTime() - job.enqueuedAt(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,214 @@
+package com.irfan.chat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps {@code notifications} range-partitioned by day on {@code timestamp}.
+ * A scheduled job pre-creates the partitions for the coming days and detaches
+ * and drops the ones that fell out of the retention window, so expiry never
+ * runs a large DELETE. Unread notifications in a dropped partition are taken
+ * off the in-memory unread counters.
+ */
+@Service
+public class NotificationPartitionService {
+
+    private static final String PARTITION_PREFIX = "notifications_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String IS_PARTITIONED =
+        "SELECT relkind = 'p' FROM pg_class WHERE oid = 'notifications'::regclass";
+
+    private static final String LIST_PARTITIONS =
+        "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'notifications'::regclass";
+
+    // Run on a fresh database, after Hibernate created the plain table and before any row exists.
+    private static final String[] PARTITION_EMPTY_TABLE = {
+        "ALTER TABLE notifications RENAME TO notifications_unpartitioned",
+        "CREATE TABLE notifications (LIKE notifications_unpartitioned INCLUDING DEFAULTS) PARTITION BY RANGE (timestamp)",
+        "DROP TABLE notifications_unpartitioned",
+        "ALTER TABLE notifications ADD PRIMARY KEY (id, timestamp)",
+        "CREATE TABLE notifications_default PARTITION OF notifications DEFAULT",
+        "CREATE INDEX idx_notifications_recipient_time ON notifications(recipient, timestamp, id)",
+        "CREATE INDEX idx_notifications_recipient_chat_time ON notifications(recipient, chat_id, timestamp, id)",
+        "CREATE INDEX idx_notifications_unread ON notifications(recipient, chat_id) WHERE NOT read"
+    };
+
+    // Rows and still-unread messages per chat of a detached partition, read in one scan.
+    private static final String EXPIRED_COUNTS =
+        "SELECT recipient, chat_id, count(*), COALESCE(sum(message_count) FILTER (WHERE NOT read), 0) FROM %s GROUP BY recipient, chat_id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UnreadCounters unreadCounters;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.notifications.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${chat.notifications.partitions.precreate-days:7}")
+    private int precreateDays;
+
+    private volatile boolean partitioned;
+    private volatile int partitionCount;
+
+    private Counter expiredRows;
+    private Counter droppedPartitions;
+    private Timer runDuration;
+
+    private record Expired(String recipient, String chatId, long rows, long unread) {}
+
+    @PostConstruct
+    public void start() {
+        expiredRows = Counter.builder("chat.notifications.retention.expired.rows")
+            .description("Notification rows removed by dropping expired partitions")
+            .register(meterRegistry);
+        droppedPartitions = Counter.builder("chat.notifications.retention.dropped.partitions")
+            .description("Expired notification partitions detached and dropped")
+            .register(meterRegistry);
+        runDuration = Timer.builder("chat.notifications.retention.duration")
+            .description("Time taken by one notification partition maintenance run")
+            .register(meterRegistry);
+        Gauge.builder("chat.notifications.partitions", this, service -> service.partitionCount)
+            .description("Daily notification partitions currently attached")
+            .register(meterRegistry);
+
+        partitioned = ensurePartitioned();
+        // today's partition has to exist before the first notification is written
+        maintain();
+    }
+
+    /**
+     * Oldest notification time still inside the retention window. Queries bounded
+     * by it never touch partitions that are only waiting to be dropped.
+     */
+    public LocalDateTime retentionStart() {
+        return LocalDate.now().minusDays(retentionDays).atStartOfDay();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.notifications.retention.interval-ms:3600000}",
+               initialDelayString = "${chat.notifications.retention.interval-ms:3600000}")
+    public synchronized void maintain() {
+        if (!partitioned) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            LocalDate today = LocalDate.now();
+            TreeSet<LocalDate> days = partitionDays();
+            for (int i = 0; i <= precreateDays; i++) {
+                LocalDate day = today.plusDays(i);
+                if (days.add(day)) {
+                    createPartition(day);
+                }
+            }
+            LocalDate oldestKept = today.minusDays(retentionDays);
+            for (LocalDate day : new ArrayList<>(days.headSet(oldestKept))) {
+                dropPartition(day);
+                days.remove(day);
+            }
+            partitionCount = days.size();
+        } catch (Exception e) {
+            System.err.println("Error maintaining notification partitions: " + e.getMessage());
+        } finally {
+            runDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private boolean ensurePartitioned() {
+        try {
+            Boolean alreadyPartitioned = jdbcTemplate.queryForObject(IS_PARTITIONED, Boolean.class);
+            if (Boolean.TRUE.equals(alreadyPartitioned)) {
+                return true;
+            }
+            Boolean converted = transactionTemplate.execute(status -> {
+                jdbcTemplate.execute("LOCK TABLE notifications IN ACCESS EXCLUSIVE MODE");
+                if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM notifications)", Boolean.class))) {
+                    return false;
+                }
+                jdbcTemplate.batchUpdate(PARTITION_EMPTY_TABLE);
+                return true;
+            });
+            if (!Boolean.TRUE.equals(converted)) {
+                System.err.println("notifications is not partitioned and already holds rows; run the partitioning step of "
+                    + "db-migration.sql to enable partition retention");
+                return false;
+            }
+            System.out.println("Partitioned the notifications table by day");
+            return true;
+        } catch (Exception e) {
+            System.err.println("Error checking notification partitioning: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private TreeSet<LocalDate> partitionDays() {
+        TreeSet<LocalDate> days = new TreeSet<>();
+        for (String name : jdbcTemplate.queryForList(LIST_PARTITIONS, String.class)) {
+            if (!name.startsWith(PARTITION_PREFIX)) {
+                continue;
+            }
+            try {
+                days.add(LocalDate.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX));
+            } catch (DateTimeParseException e) {
+                // not one of ours
+            }
+        }
+        return days;
+    }
+
+    private void createPartition(LocalDate day) {
+        jdbcTemplate.execute(String.format(
+            "CREATE TABLE IF NOT EXISTS %s PARTITION OF notifications FOR VALUES FROM ('%s') TO ('%s')",
+            partitionName(day), day, day.plusDays(1)));
+    }
+
+    private void dropPartition(LocalDate day) {
+        String name = partitionName(day);
+        List<Expired> expired = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("ALTER TABLE notifications DETACH PARTITION " + name);
+            List<Expired> counts = jdbcTemplate.query(String.format(EXPIRED_COUNTS, name),
+                (rs, row) -> new Expired(rs.getString(1), rs.getString(2), rs.getLong(3), rs.getLong(4)));
+            jdbcTemplate.execute("DROP TABLE " + name);
+            return counts;
+        });
+
+        long rows = 0;
+        for (Expired chat : expired) {
+            rows += chat.rows();
+            unreadCounters.read(chat.recipient(), chat.chatId(), chat.unread());
+        }
+        expiredRows.increment(rows);
+        droppedPartitions.increment();
+        System.out.println("Dropped notification partition " + name + " with " + rows + " rows");
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+    }
+}
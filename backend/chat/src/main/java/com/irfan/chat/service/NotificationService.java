@@ -1,17 +1,73 @@
 package com.irfan.chat.service;
 
+import com.irfan.chat.dto.NotificationPage;
 import com.irfan.chat.model.Notification;
 import com.irfan.chat.repository.NotificationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class NotificationService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private static final String MARK_CHAT_READ =
+        "UPDATE notifications SET read = true WHERE recipient = ? AND chat_id = ? AND NOT read RETURNING message_count";
+
+    private static final String MARK_ALL_READ =
+        "UPDATE notifications SET read = true WHERE recipient = ? AND NOT read RETURNING chat_id, message_count";
+
+    // Folds each notification into the recipient's unread row(s) for the chat by deleting
+    // them and inserting one row carrying their summed count. Re-inserting moves the row
+    // into the current time partition, and concurrent folds can at worst leave two unread
+    // rows whose counts still add up; the next fold merges them.
+    private static final String FOLD_COLLAPSED = """
+        WITH v AS (
+            SELECT * FROM unnest(?::bigint[], ?::text[], ?::text[], ?::text[], ?::text[], ?::text[], ?::timestamp[], ?::text[])
+                AS v(id, recipient, sender, content, chat_type, chat_id, ts, message_type)
+        ), folded AS (
+            DELETE FROM notifications n USING v
+            WHERE n.recipient = v.recipient AND n.chat_id = v.chat_id AND NOT n.read
+            RETURNING n.recipient, n.chat_id, n.message_count
+        )
+        INSERT INTO notifications (id, recipient, sender, content, chat_type, chat_id, timestamp, read, message_type, message_count)
+        SELECT v.id, v.recipient, v.sender, v.content, v.chat_type, v.chat_id, v.ts, false, v.message_type,
+               1 + COALESCE((SELECT sum(f.message_count) FROM folded f WHERE f.recipient = v.recipient AND f.chat_id = v.chat_id), 0)
+        FROM v
+        RETURNING id, recipient, chat_id, message_count
+        """;
+
+    private static final String PAGE_SELECT =
+        "SELECT id, recipient, sender, content, chat_type, chat_id, timestamp, read, message_type, message_count "
+        + "FROM notifications WHERE recipient = ? AND timestamp > ?";
+
+    private static final RowMapper<Notification> NOTIFICATION_ROW = (rs, row) -> {
+        Notification notification = new Notification(rs.getString("recipient"), rs.getString("sender"), rs.getString("content"),
+            rs.getString("chat_type"), rs.getString("chat_id"), rs.getString("message_type"));
+        notification.setId(rs.getLong("id"));
+        notification.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+        notification.setRead(rs.getBoolean("read"));
+        notification.setCount(rs.getInt("message_count"));
+        return notification;
+    };
     
     @Autowired
     private NotificationRepository notificationRepository;
@@ -19,55 +75,173 @@ public class NotificationService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
     
+    @Autowired
+    private TypingIndicatorService typingIndicatorService;
+    
+    @Autowired
+    private UnreadCounters unreadCounters;
+
+    @Autowired
+    private NotificationPartitionService notificationPartitionService;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private SequenceIdAllocator sequenceIdAllocator;
+    
+    @Value("${chat.notifications.delivery-mode:TARGETED}")
+    private NotificationDeliveryMode deliveryMode;
+    
+    @Value("${chat.notifications.collapse.enabled:false}")
+    private boolean collapse;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private Timer sendTimer;
+    private Timer persistTimer;
+    private Timer deliverTimer;
+    
+    @PostConstruct
+    public void registerMetrics() {
+        sendTimer = Timer.builder("chat.notifications.send")
+            .description("Time to store and deliver a single notification")
+            .register(meterRegistry);
+        persistTimer = Timer.builder("chat.notifications.persist")
+            .description("Time to store a batch of notifications")
+            .register(meterRegistry);
+        deliverTimer = Timer.builder("chat.notifications.deliver")
+            .description("Time to hand a notification to the broker")
+            .register(meterRegistry);
+    }
+    
    
     public void sendNotification(String recipient, String sender, String content, String chatType, String chatId, String messageType) {
+        long start = System.nanoTime();
         try {
         
             Notification notification = new Notification(recipient, sender, content, chatType, chatId, messageType);
-            notificationRepository.save(notification);
-            
+            save(List.of(notification));
             
-            try {
-                
-                messagingTemplate.convertAndSendToUser(
-                    recipient,
-                    "/queue/notifications",
-                    notification
-                );
-                System.out.println("Notification sent via /user/queue/notifications to " + recipient);
-            } catch (Exception e) {
-                System.err.println("Error sending via user queue: " + e.getMessage());
-            }
-            
-            try {
-                
-                messagingTemplate.convertAndSend("/topic/user/" + recipient + "/notifications", notification);
-                System.out.println("Notification sent via /topic/user/" + recipient + "/notifications");
-            } catch (Exception e) {
-                System.err.println("Error sending via user topic: " + e.getMessage());
-            }
-            
-            try {
-                
-                messagingTemplate.convertAndSend("/topic/notifications", 
-                    Map.of("recipient", recipient, "notification", notification));
-                System.out.println("Notification sent via /topic/notifications");
-            } catch (Exception e) {
-                System.err.println("Error sending via global topic: " + e.getMessage());
-            }
-            
-            
-            messagingTemplate.convertAndSend("/topic/notifications-debug", 
-                Map.of("recipient", recipient, "notification", notification));
+            deliver(notification);
             
             System.out.println("Notification sent to " + recipient + ": " + content);
         } catch (Exception e) {
             System.err.println("Error sending notification: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
     
     
+    /**
+     * Persists notifications, fills in their ids and counts them as unread. In collapse
+     * mode a notification with a chat id replaces the recipient's unread row for that
+     * chat and comes back with the new row's id and the folded message count; a list
+     * must then hold at most one notification per recipient and chat.
+     */
+    public List<Notification> save(List<Notification> notifications) {
+        long start = System.nanoTime();
+        try {
+            return store(notifications);
+        } finally {
+            persistTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private List<Notification> store(List<Notification> notifications) {
+        if (!collapse) {
+            notificationRepository.saveAll(notifications);
+            notifications.forEach(unreadCounters::added);
+            return notifications;
+        }
+        List<Notification> separate = new ArrayList<>();
+        Map<String, Notification> collapsible = new HashMap<>();
+        for (Notification notification : notifications) {
+            if (notification.getChatId() == null) {
+                separate.add(notification);
+            } else {
+                collapsible.put(key(notification.getRecipient(), notification.getChatId()), notification);
+            }
+        }
+        if (!separate.isEmpty()) {
+            notificationRepository.saveAll(separate);
+        }
+        if (!collapsible.isEmpty()) {
+            foldCollapsed(collapsible);
+        }
+        notifications.forEach(unreadCounters::added);
+        return notifications;
+    }
+    
+    private void foldCollapsed(Map<String, Notification> notifications) {
+        int size = notifications.size();
+        long[] ids = sequenceIdAllocator.nextIds("notifications_seq", size);
+        Long[] idArray = new Long[size];
+        String[] recipients = new String[size];
+        String[] senders = new String[size];
+        String[] contents = new String[size];
+        String[] chatTypes = new String[size];
+        String[] chatIds = new String[size];
+        Timestamp[] timestamps = new Timestamp[size];
+        String[] messageTypes = new String[size];
+        int i = 0;
+        for (Notification notification : notifications.values()) {
+            idArray[i] = ids[i];
+            recipients[i] = notification.getRecipient();
+            senders[i] = notification.getSender();
+            contents[i] = notification.getContent();
+            chatTypes[i] = notification.getChatType();
+            chatIds[i] = notification.getChatId();
+            timestamps[i] = Timestamp.valueOf(notification.getTimestamp());
+            messageTypes[i] = notification.getMessageType();
+            i++;
+        }
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(FOLD_COLLAPSED);
+            ps.setArray(1, connection.createArrayOf("bigint", idArray));
+            ps.setArray(2, connection.createArrayOf("text", recipients));
+            ps.setArray(3, connection.createArrayOf("text", senders));
+            ps.setArray(4, connection.createArrayOf("text", contents));
+            ps.setArray(5, connection.createArrayOf("text", chatTypes));
+            ps.setArray(6, connection.createArrayOf("text", chatIds));
+            ps.setArray(7, connection.createArrayOf("timestamp", timestamps));
+            ps.setArray(8, connection.createArrayOf("text", messageTypes));
+            return ps;
+        }, rs -> {
+            Notification notification = notifications.get(key(rs.getString(2), rs.getString(3)));
+            notification.setId(rs.getLong(1));
+            notification.setCount(rs.getInt(4));
+        });
+    }
+    
+    private static String key(String recipient, String chatId) {
+        return recipient + '\u0000' + chatId;
+    }
+    
+    public void deliver(Notification notification) {
+        long start = System.nanoTime();
+        try {
+            messagingTemplate.convertAndSendToUser(
+                notification.getRecipient(),
+                "/queue/notifications",
+                notification
+            );
+        } catch (Exception e) {
+            System.err.println("Error sending notification to " + notification.getRecipient() + ": " + e.getMessage());
+        }
+        
+        if (deliveryMode == NotificationDeliveryMode.DEBUG) {
+            messagingTemplate.convertAndSend("/topic/notifications-debug", 
+                Map.of("recipient", notification.getRecipient(), "notification", notification));
+        }
+        deliverTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    
+    
     public void sendPrivateMessageNotification(String recipient, String sender, String content) {
         sendNotification(recipient, sender, content, "PRIVATE", sender, "MESSAGE");
     }
@@ -84,30 +258,76 @@ public class NotificationService {
     
   
     public void sendTypingNotification(String recipient, String sender, String chatType, String chatId) {
-        sendNotification(recipient, sender, sender + " is typing...", chatType, chatId, "TYPING");
+        typingIndicatorService.typing(recipient, sender, chatType, chatId);
     }
     
  
     public void sendStopTypingNotification(String recipient, String sender, String chatType, String chatId) {
-        sendNotification(recipient, sender, sender + " stopped typing", chatType, chatId, "STOP_TYPING");
+        typingIndicatorService.stopTyping(recipient, sender, chatType, chatId);
     }
     
  
-    public List<Notification> getUserNotifications(String username) {
-        return notificationRepository.findByRecipientOrderByTimestampDesc(username);
-    }
+    /**
+     * Returns the user's notifications older than the {@code before} cursor, newest
+     * first, optionally only unread ones or only those of one chat type or chat.
+     * The keyset condition on (timestamp, id) is answered by walking an index from
+     * the cursor, so a page costs the same however long the history is.
+     */
+    public NotificationPage getNotifications(String username, boolean unreadOnly, String chatType, String chatId,
+                                             String before, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        StringBuilder sql = new StringBuilder(PAGE_SELECT);
+        List<Object> args = new ArrayList<>(List.of(username, Timestamp.valueOf(notificationPartitionService.retentionStart())));
+        if (unreadOnly) {
+            sql.append(" AND NOT read");
+        }
+        if (chatType != null) {
+            sql.append(" AND chat_type = ?");
+            args.add(chatType);
+        }
+        if (chatId != null) {
+            sql.append(" AND chat_id = ?");
+            args.add(chatId);
+        }
+        if (before != null) {
+            int separator = before.lastIndexOf('_');
+            try {
+                LocalDateTime timestamp = LocalDateTime.parse(before.substring(0, Math.max(separator, 0)));
+                long id = Long.parseLong(before.substring(separator + 1));
+                // the plain bound lets the planner skip partitions newer than the cursor
+                sql.append(" AND timestamp <= ? AND (timestamp, id) < (?, ?)");
+                args.add(Timestamp.valueOf(timestamp));
+                args.add(Timestamp.valueOf(timestamp));
+                args.add(id);
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid notification cursor: " + before);
+            }
+        }
+        sql.append(" ORDER BY timestamp DESC, id DESC LIMIT ?");
+        args.add(pageSize + 1);
 
-    public List<Notification> getUnreadNotifications(String username) {
-        return notificationRepository.findByRecipientAndReadFalseOrderByTimestampDesc(username);
+        List<Notification> notifications = jdbcTemplate.query(sql.toString(), NOTIFICATION_ROW, args.toArray());
+        boolean hasMore = notifications.size() > pageSize;
+        List<Notification> page = new ArrayList<>(notifications.subList(0, Math.min(pageSize, notifications.size())));
+        String nextCursor = null;
+        if (hasMore) {
+            Notification last = page.get(page.size() - 1);
+            nextCursor = last.getTimestamp() + "_" + last.getId();
+        }
+        return new NotificationPage(page, nextCursor, hasMore);
     }
   
     public long getUnreadNotificationCount(String username) {
-        return notificationRepository.countByRecipientAndReadFalse(username);
+        return unreadCounters.total(username);
     }
   
     public void markNotificationsAsRead(String username, String chatId) {
         try {
-            notificationRepository.markAsReadByRecipientAndChatId(username, chatId);
+            long marked = 0;
+            for (Integer count : jdbcTemplate.queryForList(MARK_CHAT_READ, Integer.class, username, chatId)) {
+                marked += count;
+            }
+            unreadCounters.read(username, chatId, marked);
         } catch (Exception e) {
             System.err.println("Error marking notifications as read: " + e.getMessage());
         }
@@ -115,19 +335,13 @@ public class NotificationService {
   
     public void markAllNotificationsAsRead(String username) {
         try {
-            notificationRepository.markAllAsReadByRecipient(username);
+            Map<String, Long> markedPerChat = new HashMap<>();
+            jdbcTemplate.query(MARK_ALL_READ, rs -> {
+                markedPerChat.merge(rs.getString(1), rs.getLong(2), Long::sum);
+            }, username);
+            markedPerChat.forEach((chatId, marked) -> unreadCounters.read(username, chatId, marked));
         } catch (Exception e) {
             System.err.println("Error marking all notifications as read: " + e.getMessage());
         }
     }
- 
-    public void cleanupOldNotifications() {
-        try {
-            LocalDateTime cutoffDate = LocalDateTime.now().minusDays(30);
-            notificationRepository.deleteOldNotifications(cutoffDate);
-            System.out.println("Old notifications cleaned up");
-        } catch (Exception e) {
-            System.err.println("Error cleaning up old notifications: " + e.getMessage());
-        }
-    }
 }
@@ -0,0 +1,91 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.PresenceDelta;
+import com.irfan.chat.dto.PresenceSnapshot;
+import com.irfan.chat.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Publishes presence as a versioned stream on {@code /topic/presence}. Joins and
+ * leaves are collected for one window and sent as a single delta carrying the
+ * last change of each user. A snapshot taken mid-window already reflects some of
+ * those changes, so deltas are state rather than transitions: applying one to
+ * any snapshot of the previous version gives the same result. Clients start from
+ * {@link #snapshot()} and apply deltas in version order.
+ */
+@Service
+public class PresenceBroadcaster implements PresenceRegistry.Listener {
+
+    public static final String DESTINATION = "/topic/presence";
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, User> joined = new LinkedHashMap<>();
+    private final Set<String> left = new LinkedHashSet<>();
+    private long version;
+
+    private Counter deltas;
+    private Counter changes;
+
+    @PostConstruct
+    public void start() {
+        deltas = Counter.builder("chat.presence.deltas")
+            .description("Presence deltas broadcast")
+            .register(meterRegistry);
+        changes = Counter.builder("chat.presence.delta.changes")
+            .description("Joins and leaves carried by presence deltas")
+            .register(meterRegistry);
+        presenceRegistry.addListener(this);
+    }
+
+    @Override
+    public synchronized void joined(User user) {
+        left.remove(user.getUsername());
+        joined.put(user.getUsername(), user);
+    }
+
+    @Override
+    public synchronized void left(String username) {
+        joined.remove(username);
+        left.add(username);
+    }
+
+    public synchronized PresenceSnapshot snapshot() {
+        return new PresenceSnapshot(version, presenceRegistry.getOnlineUsers());
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.broadcast-window-ms:250}")
+    public void flush() {
+        PresenceDelta delta;
+        synchronized (this) {
+            if (joined.isEmpty() && left.isEmpty()) {
+                return;
+            }
+            delta = new PresenceDelta(++version, new ArrayList<>(joined.values()), new ArrayList<>(left));
+            joined.clear();
+            left.clear();
+        }
+        messagingTemplate.convertAndSend(DESTINATION, delta);
+        deltas.increment();
+        changes.increment(delta.joined().size() + delta.left().size());
+    }
+}
@@ -0,0 +1,224 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.User;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks who is online by counting live STOMP sessions per username, so closing
+ * one tab does not take a user offline while another is still connected.
+ * Online/offline transitions are written back to {@code users} by a background
+ * worker that coalesces them per user and applies each batch as one JDBC batch.
+ */
+@Service
+public class PresenceRegistry {
+
+    private static final String UPDATE_PRESENCE =
+        "UPDATE users SET is_online = ?, last_seen = ? WHERE username = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.presence.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${chat.presence.batch-size:500}")
+    private int batchSize;
+
+    private static final class Presence {
+        final User user;
+        final Set<String> sessions = ConcurrentHashMap.newKeySet();
+
+        Presence(User user) {
+            this.user = user;
+        }
+    }
+
+    private record Transition(String username, boolean online, LocalDateTime at) {}
+
+    /**
+     * Notified of every online/offline transition, in order per user.
+     */
+    public interface Listener {
+        void joined(User user);
+
+        void left(String username);
+    }
+
+    private final Map<String, Presence> online = new ConcurrentHashMap<>();
+    private final BlockingQueue<Transition> transitions = new LinkedBlockingQueue<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Thread worker;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("chat.presence.online.users", online, Map::size)
+            .description("Users with at least one live session")
+            .register(meterRegistry);
+        Gauge.builder("chat.presence.sessions", this, PresenceRegistry::sessionCount)
+            .description("Live STOMP sessions registered for presence")
+            .register(meterRegistry);
+        Gauge.builder("chat.presence.pending", transitions, BlockingQueue::size)
+            .description("Presence transitions not yet written to the database")
+            .register(meterRegistry);
+
+        running = true;
+        worker = new Thread(this::runWorker, "presence-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Registers a session for the user. Returns true if this took the user from offline to online.
+     */
+    public boolean connect(User user, String sessionId) {
+        boolean[] cameOnline = new boolean[1];
+        online.compute(user.getUsername(), (username, presence) -> {
+            if (presence == null) {
+                presence = new Presence(snapshot(user));
+                // queued under the key's lock so a user's transitions stay in order
+                transitions.add(new Transition(username, true, LocalDateTime.now()));
+                for (Listener listener : listeners) {
+                    listener.joined(presence.user);
+                }
+                cameOnline[0] = true;
+            }
+            presence.sessions.add(sessionId);
+            return presence;
+        });
+        return cameOnline[0];
+    }
+
+    /**
+     * Drops a session. Returns true if it was the user's last one and they are now offline.
+     */
+    public boolean disconnect(String username, String sessionId) {
+        boolean[] wentOffline = new boolean[1];
+        online.computeIfPresent(username, (name, presence) -> {
+            if (!presence.sessions.remove(sessionId) || !presence.sessions.isEmpty()) {
+                return presence;
+            }
+            transitions.add(new Transition(username, false, LocalDateTime.now()));
+            for (Listener listener : listeners) {
+                listener.left(username);
+            }
+            wentOffline[0] = true;
+            return null;
+        });
+        return wentOffline[0];
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Forgets every session, e.g. after a restart where no client is connected yet.
+     */
+    public void clear() {
+        for (String username : online.keySet()) {
+            online.computeIfPresent(username, (name, presence) -> {
+                for (Listener listener : listeners) {
+                    listener.left(name);
+                }
+                return null;
+            });
+        }
+    }
+
+    public boolean isOnline(String username) {
+        return online.containsKey(username);
+    }
+
+    public User getOnlineUser(String username) {
+        Presence presence = online.get(username);
+        return presence != null ? presence.user : null;
+    }
+
+    public List<User> getOnlineUsers() {
+        List<User> users = new ArrayList<>(online.size());
+        online.values().forEach(presence -> users.add(presence.user));
+        return users;
+    }
+
+    public int sessionCount() {
+        int sessions = 0;
+        for (Presence presence : online.values()) {
+            sessions += presence.sessions.size();
+        }
+        return sessions;
+    }
+
+    // Detached copy, so the registry never shares a managed entity between threads.
+    private static User snapshot(User user) {
+        User copy = new User(user.getUsername());
+        copy.setId(user.getId());
+        copy.setCreatedAt(user.getCreatedAt());
+        copy.setOnline(true);
+        copy.setLastSeen(LocalDateTime.now());
+        return copy;
+    }
+
+    private void runWorker() {
+        List<Transition> batch = new ArrayList<>(batchSize);
+        while (running || !transitions.isEmpty()) {
+            try {
+                Transition first = transitions.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                transitions.drainTo(batch, batchSize - 1);
+                persist(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("Error persisting presence changes: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void persist(List<Transition> batch) {
+        Map<String, Transition> latest = new LinkedHashMap<>();
+        for (Transition transition : batch) {
+            latest.put(transition.username(), transition);
+        }
+        jdbcTemplate.batchUpdate(UPDATE_PRESENCE, latest.values(), latest.size(), (ps, transition) -> {
+            ps.setBoolean(1, transition.online());
+            ps.setTimestamp(2, Timestamp.valueOf(transition.at()));
+            ps.setString(3, transition.username());
+        });
+    }
+}
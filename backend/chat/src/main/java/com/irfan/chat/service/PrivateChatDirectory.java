@@ -0,0 +1,118 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.PrivateChat;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each pair of users to the id of their active private chat. Chats are
+ * stored with the pair in canonical order ({@code user1 <= user2} by code point,
+ * see {@link PrivateChat#compareUsernames}, which db-migration.sql matches with
+ * {@code COLLATE "C"}), so a pair has
+ * exactly one row and the unique index on (user1, user2) covers both directions.
+ * Entries are filled on first use; a miss when sending resolves or creates the
+ * chat with a single upsert.
+ */
+@Service
+public class PrivateChatDirectory {
+
+    private static final String CREATE_PAIR_INDEX =
+        "CREATE UNIQUE INDEX IF NOT EXISTS idx_private_chats_pair ON private_chats(user1, user2)";
+
+    // Reopens a deactivated chat of the pair rather than starting a second one.
+    private static final String UPSERT_CHAT = """
+        INSERT INTO private_chats (id, user1, user2, created_at, is_active) VALUES (?, ?, ?, ?, true)
+        ON CONFLICT (user1, user2) DO UPDATE SET is_active = true
+        RETURNING id
+        """;
+
+    private static final String FIND_ACTIVE_CHAT =
+        "SELECT id FROM private_chats WHERE user1 = ? AND user2 = ? AND is_active";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SequenceIdAllocator sequenceIdAllocator;
+
+    private final ConcurrentHashMap<String, Long> chatIds = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void createPairIndex() {
+        try {
+            jdbcTemplate.execute(CREATE_PAIR_INDEX);
+        } catch (Exception e) {
+            System.err.println("Private chats are not stored in canonical pair order yet (see db-migration.sql): " + e.getMessage());
+        }
+    }
+
+    private static String first(String a, String b) {
+        return PrivateChat.compareUsernames(a, b) <= 0 ? a : b;
+    }
+
+    private static String second(String a, String b) {
+        return PrivateChat.compareUsernames(a, b) <= 0 ? b : a;
+    }
+
+    private static String pairKey(String a, String b) {
+        return first(a, b) + '\u0000' + second(a, b);
+    }
+
+    /**
+     * Returns the id of the pair's active chat, creating or reactivating it if needed.
+     */
+    public long getOrCreate(String a, String b) {
+        String key = pairKey(a, b);
+        Long chatId = chatIds.get(key);
+        if (chatId != null) {
+            return chatId;
+        }
+        // concurrent misses for the same pair all get the same row back from the upsert
+        chatId = jdbcTemplate.queryForObject(UPSERT_CHAT, Long.class,
+            sequenceIdAllocator.nextId("private_chats_seq"), first(a, b), second(a, b), Timestamp.valueOf(LocalDateTime.now()));
+        remember(key, chatId);
+        return chatId;
+    }
+
+    public Optional<Long> find(String a, String b) {
+        String key = pairKey(a, b);
+        Long chatId = chatIds.get(key);
+        if (chatId != null) {
+            return Optional.of(chatId);
+        }
+        List<Long> found = jdbcTemplate.queryForList(FIND_ACTIVE_CHAT, Long.class, first(a, b), second(a, b));
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        remember(key, found.get(0));
+        return Optional.of(found.get(0));
+    }
+
+    // A chat created inside a transaction that later rolls back must not stay in the map.
+    private void remember(String key, Long chatId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            chatIds.put(key, chatId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                chatIds.put(key, chatId);
+            }
+        });
+    }
+
+    public void evict(String a, String b) {
+        chatIds.remove(pairKey(a, b));
+    }
+}
@@ -0,0 +1,262 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.model.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of the latest messages of recently opened private chats. Each chat
+ * keeps a window of at most {@code messages-per-chat} messages in chronological
+ * order; the cache as a whole is bounded by chat count and by an estimate of the
+ * memory the cached messages hold.
+ *
+ * Writes go through after the sending transaction commits. Every write or
+ * invalidation bumps a stamp for the chat, and a window loaded from the database
+ * is only installed if its stamp did not change while the query ran, so a load
+ * racing with a send cannot cache a window that misses the new message.
+ */
+@Service
+public class PrivateChatMessageCache {
+
+    private static final int STAMP_STRIPES = 64;
+    private static final int MESSAGE_OVERHEAD_BYTES = 96;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.private-cache.max-chats:1000}")
+    private int maxChats;
+
+    @Value("${chat.private-cache.messages-per-chat:100}")
+    private int messagesPerChat;
+
+    @Value("${chat.private-cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    private static final class Window {
+        final List<ChatMessage> messages = new ArrayList<>();
+        // True when the chat has no messages older than the first one held.
+        boolean complete;
+        long bytes;
+    }
+
+    private final LinkedHashMap<Long, Window> windows = new LinkedHashMap<>(16, 0.75f, true);
+    private final long[] stamps = new long[STAMP_STRIPES];
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Counter evictions;
+
+    @PostConstruct
+    public void registerMetrics() {
+        FunctionCounter.builder("chat.private-cache.requests", hits, AtomicLong::get)
+            .tag("result", "hit")
+            .description("Private chat history pages served from the cache")
+            .register(meterRegistry);
+        FunctionCounter.builder("chat.private-cache.requests", misses, AtomicLong::get)
+            .tag("result", "miss")
+            .description("Private chat history pages that had to go to the database")
+            .register(meterRegistry);
+        evictions = Counter.builder("chat.private-cache.evictions")
+            .description("Chats evicted from the private message cache to stay within its bounds")
+            .register(meterRegistry);
+        Gauge.builder("chat.private-cache.chats", this, cache -> cache.size())
+            .description("Private chats currently cached")
+            .register(meterRegistry);
+        Gauge.builder("chat.private-cache.bytes", this, cache -> cache.bytes())
+            .description("Estimated memory held by cached private messages")
+            .register(meterRegistry);
+    }
+
+    public int messagesPerChat() {
+        return messagesPerChat;
+    }
+
+    /**
+     * Returns the page if the cached window holds all of it, otherwise null.
+     */
+    public MessagePage page(Long chatId, Long before, Long after, int pageSize) {
+        MessagePage page = readPage(chatId, before, after, pageSize);
+        (page != null ? hits : misses).incrementAndGet();
+        return page;
+    }
+
+    private synchronized MessagePage readPage(Long chatId, Long before, Long after, int pageSize) {
+        Window window = windows.get(chatId);
+        if (window == null) {
+            return null;
+        }
+        List<ChatMessage> messages = window.messages;
+
+        if (after != null) {
+            int from = indexOf(messages, after);
+            if (from < 0) {
+                return null;
+            }
+            int to = Math.min(messages.size(), from + 1 + pageSize);
+            boolean hasMore = to < messages.size();
+            List<ChatMessage> page = new ArrayList<>(messages.subList(from + 1, to));
+            return new MessagePage(page, hasMore ? page.get(page.size() - 1).getId() : null, hasMore);
+        }
+
+        int end = messages.size();
+        if (before != null) {
+            end = indexOf(messages, before);
+            if (end < 0) {
+                return null;
+            }
+        }
+        int start = Math.max(0, end - pageSize);
+        if (start == 0 && end < pageSize && !window.complete) {
+            return null;
+        }
+        boolean hasMore = start > 0 || !window.complete;
+        List<ChatMessage> page = new ArrayList<>(messages.subList(start, end));
+        return new MessagePage(page, hasMore ? page.get(0).getId() : null, hasMore);
+    }
+
+    public synchronized long stamp(Long chatId) {
+        return stamps[stripe(chatId)];
+    }
+
+    /**
+     * Installs a window from the latest messages of a chat, newest first, as
+     * returned by a query for {@code messagesPerChat() + 1} rows.
+     */
+    public synchronized void load(Long chatId, long stamp, List<ChatMessage> newestFirst) {
+        if (stamps[stripe(chatId)] != stamp) {
+            return;
+        }
+        Window window = new Window();
+        for (int i = Math.min(newestFirst.size(), messagesPerChat) - 1; i >= 0; i--) {
+            ChatMessage message = newestFirst.get(i);
+            window.messages.add(message);
+            window.bytes += estimateBytes(message);
+        }
+        window.complete = newestFirst.size() <= messagesPerChat;
+        remove(chatId);
+        windows.put(chatId, window);
+        totalBytes += window.bytes;
+        evictOverflow();
+    }
+
+    /**
+     * Adds a message to its chat's window once the surrounding transaction commits.
+     */
+    public void appendAfterCommit(Long chatId, ChatMessage message) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(chatId, message);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                append(chatId, message);
+            }
+        });
+    }
+
+    public synchronized void append(Long chatId, ChatMessage message) {
+        stamps[stripe(chatId)]++;
+        Window window = windows.get(chatId);
+        if (window == null) {
+            return;
+        }
+        if (message.getId() == null) {
+            remove(chatId);
+            return;
+        }
+
+        List<ChatMessage> messages = window.messages;
+        int position = messages.size();
+        while (position > 0 && isAfter(messages.get(position - 1), message)) {
+            position--;
+        }
+        messages.add(position, message);
+        long bytes = estimateBytes(message);
+        window.bytes += bytes;
+        totalBytes += bytes;
+
+        if (messages.size() > messagesPerChat) {
+            long dropped = estimateBytes(messages.remove(0));
+            window.bytes -= dropped;
+            totalBytes -= dropped;
+            window.complete = false;
+        }
+        evictOverflow();
+    }
+
+    public synchronized void invalidate(Long chatId) {
+        stamps[stripe(chatId)]++;
+        remove(chatId);
+    }
+
+    public synchronized int size() {
+        return windows.size();
+    }
+
+    public synchronized long bytes() {
+        return totalBytes;
+    }
+
+    private void remove(Long chatId) {
+        Window removed = windows.remove(chatId);
+        if (removed != null) {
+            totalBytes -= removed.bytes;
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<Long, Window>> eldest = windows.entrySet().iterator();
+        while ((windows.size() > maxChats || totalBytes > maxBytes) && windows.size() > 1) {
+            Window evicted = eldest.next().getValue();
+            eldest.remove();
+            totalBytes -= evicted.bytes;
+            evictions.increment();
+        }
+    }
+
+    private static int indexOf(List<ChatMessage> messages, Long id) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (id.equals(messages.get(i).getId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isAfter(ChatMessage cached, ChatMessage message) {
+        int byTime = cached.getTimestamp().compareTo(message.getTimestamp());
+        return byTime != 0 ? byTime > 0 : cached.getId() > message.getId();
+    }
+
+    private static int stripe(Long chatId) {
+        return Long.hashCode(chatId) & (STAMP_STRIPES - 1);
+    }
+
+    private static long estimateBytes(ChatMessage message) {
+        long chars = length(message.getContent()) + length(message.getSender()) + length(message.getRecipient());
+        return MESSAGE_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
@@ -1,15 +1,24 @@
 package com.irfan.chat.service;
 
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.dto.PrivateChatSummary;
 import com.irfan.chat.model.ChatMessage;
 import com.irfan.chat.model.PrivateChat;
 import com.irfan.chat.repository.MessageRepository;
 import com.irfan.chat.repository.PrivateChatRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class PrivateChatService {
@@ -23,68 +32,156 @@ public class PrivateChatService {
     @Autowired
     private ChatService chatService;
     
+    @Autowired
+    private MessagePersistenceService messagePersistenceService;
+    
+    @Autowired
+    private PrivateChatMessageCache privateChatMessageCache;
+    
+    @Autowired
+    private PrivateChatDirectory privateChatDirectory;
+    
+    @Autowired
+    private InboxService inboxService;
+    
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+    
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private Timer sendTimer;
+    private Timer persistTimer;
+    private Timer deliverTimer;
+    
+    @PostConstruct
+    public void registerMetrics() {
+        sendTimer = ChatService.messageTimer(meterRegistry, "chat.messages.send", "private", "Time to handle a sent message");
+        persistTimer = ChatService.messageTimer(meterRegistry, "chat.messages.persist", "private", "Time to store a sent message");
+        deliverTimer = ChatService.messageTimer(meterRegistry, "chat.messages.deliver", "private", "Time to hand a sent message to the broker");
+    }
+    
     @Transactional
     public PrivateChat getOrCreatePrivateChat(String user1, String user2) {
         System.out.println("Getting or creating private chat between " + user1 + " and " + user2);
-       
-        Optional<PrivateChat> existingChat = privateChatRepository.findActiveChatBetweenUsers(user1, user2);
-        
-        if (existingChat.isPresent()) {
-            System.out.println("Found existing chat: " + existingChat.get().getId());
-            return existingChat.get();
-        }
-        
-        PrivateChat newChat = new PrivateChat(user1, user2);
-        PrivateChat savedChat = privateChatRepository.save(newChat);
-        System.out.println("Created new private chat: " + savedChat.getId());
-        
-        return savedChat;
+        return privateChatRepository.findById(privateChatDirectory.getOrCreate(user1, user2)).orElseThrow();
     }
     
  
-    @Transactional
     public ChatMessage sendPrivateMessage(String sender, String recipient, String content) {
-        System.out.println("Sending private message from " + sender + " to " + recipient + ": " + content);
-      
-        PrivateChat chat = getOrCreatePrivateChat(sender, recipient);
-      
-        ChatMessage message = new ChatMessage(content, sender, recipient);
-        message.setPrivateChat(chat);
-        message.setTimestamp(LocalDateTime.now());
-      
-        ChatMessage savedMessage = messageRepository.save(message);
-        System.out.println("Saved private message: " + savedMessage.getId());
-     
-        chat.updateLastMessage(content, LocalDateTime.now());
-        privateChatRepository.save(chat);
-        System.out.println("Updated chat last message");
-        
-
-        
-        return savedMessage;
+        long start = System.nanoTime();
+        try {
+            System.out.println("Sending private message from " + sender + " to " + recipient + ": " + content);
+          
+            long chatId = privateChatDirectory.getOrCreate(sender, recipient);
+          
+            ChatMessage message = new ChatMessage(content, sender, recipient);
+            message.setPrivateChat(privateChatRepository.getReferenceById(chatId));
+            message.setTimestamp(LocalDateTime.now());
+          
+            long persistStart = System.nanoTime();
+            ChatMessage savedMessage = messagePersistenceService.savePrivate(message);
+            persistTimer.record(System.nanoTime() - persistStart, TimeUnit.NANOSECONDS);
+            System.out.println("Saved private message: " + savedMessage.getId());
+            privateChatMessageCache.appendAfterCommit(chatId, savedMessage);
+            inboxService.messageSent(chatId, sender, recipient, content, savedMessage.getTimestamp());
+            
+            return savedMessage;
+        } finally {
+            sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    // Sends a stored private message to the recipient's sessions.
+    public void deliverPrivateMessage(ChatMessage message) {
+        long start = System.nanoTime();
+        try {
+            messagingTemplate.convertAndSendToUser(message.getRecipient(), "/queue/private", message);
+        } finally {
+            deliverTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
     
 
     
-    public List<PrivateChat> getUserPrivateChats(String username) {
+    public List<PrivateChatSummary> getUserPrivateChats(String username) {
         System.out.println("Getting private chats for user: " + username);
-        List<PrivateChat> chats = privateChatRepository.findActiveChatsByUser(username);
+        List<PrivateChatSummary> chats = privateChatRepository.findActiveChatsByUser(username);
         System.out.println("Found " + chats.size() + " chats for user " + username);
         return chats;
     }
  
-    public List<ChatMessage> getChatMessages(Long chatId) {
-        System.out.println("Getting messages for chat: " + chatId);
-        List<ChatMessage> messages = messageRepository.findMessagesByChatId(chatId);
-        System.out.println("Found " + messages.size() + " messages for chat " + chatId);
-        return messages;
+    /**
+     * Pages through a conversation by message id: {@code after} walks forward from
+     * a known message, {@code before} walks back, and neither returns the latest page.
+     */
+    public MessagePage getChatMessages(Long chatId, Long before, Long after, int limit) {
+        int pageSize = ChatService.pageSize(limit);
+        if (pageSize <= privateChatMessageCache.messagesPerChat()) {
+            MessagePage cached = privateChatMessageCache.page(chatId, before, after, pageSize);
+            if (cached != null) {
+                return cached;
+            }
+            if (before == null && after == null) {
+                long stamp = privateChatMessageCache.stamp(chatId);
+                List<ChatMessage> latest = latestChatMessages(chatId, privateChatMessageCache.messagesPerChat() + 1);
+                privateChatMessageCache.load(chatId, stamp, latest);
+                return toPage(latest, pageSize, false);
+            }
+        }
+
+        List<ChatMessage> messages;
+        boolean forward = after != null;
+        if (messageArchiveService.holds(chatId)) {
+            messages = forward
+                ? messageArchiveService.after(chatId, after, pageSize + 1)
+                : messageArchiveService.before(chatId, before, null, pageSize + 1);
+        } else if (forward) {
+            messages = messageRepository.findChatMessagesAfter(chatId, after, pageSize + 1);
+        } else if (before != null) {
+            messages = messageRepository.findChatMessagesBefore(chatId, before, pageSize + 1);
+        } else {
+            messages = messageRepository.findLatestChatMessages(chatId, pageSize + 1);
+        }
+        return toPage(messages, pageSize, forward);
+    }
+
+    private List<ChatMessage> latestChatMessages(Long chatId, int limit) {
+        return messageArchiveService.holds(chatId)
+            ? messageArchiveService.before(chatId, null, null, limit)
+            : messageRepository.findLatestChatMessages(chatId, limit);
+    }
+
+    // Turns rows fetched in cursor order (newest first unless walking forward) into a chronological page.
+    private static MessagePage toPage(List<ChatMessage> messages, int pageSize, boolean forward) {
+        boolean hasMore = messages.size() > pageSize;
+        List<ChatMessage> page = new ArrayList<>(messages.subList(0, Math.min(pageSize, messages.size())));
+        if (!forward) {
+            Collections.reverse(page);
+        }
+        Long nextCursor = null;
+        if (hasMore) {
+            nextCursor = forward ? page.get(page.size() - 1).getId() : page.get(0).getId();
+        }
+        return new MessagePage(page, nextCursor, hasMore);
     }
 
-    public List<ChatMessage> getPrivateMessages(String user1, String user2) {
+    /**
+     * Like {@link #getChatMessages}, walking back from {@code before}, for a chat
+     * known only by its two users. A pair with no chat yet has an empty page.
+     */
+    public MessagePage getPrivateMessages(String user1, String user2, Long before, int limit) {
         System.out.println("Getting private messages between " + user1 + " and " + user2);
-        List<ChatMessage> messages = messageRepository.findPrivateMessages(user1, user2);
-        System.out.println("Found " + messages.size() + " messages between " + user1 + " and " + user2);
-        return messages;
+        Optional<Long> chatId = privateChatDirectory.find(user1, user2);
+        if (chatId.isEmpty()) {
+            return new MessagePage(new ArrayList<>(), null, false);
+        }
+        MessagePage page = getChatMessages(chatId.get(), before, null, limit);
+        System.out.println("Found " + page.messages().size() + " messages between " + user1 + " and " + user2);
+        return page;
     }
   
     @Transactional
@@ -95,6 +192,9 @@ public class PrivateChatService {
             PrivateChat chat = chatOpt.get();
             chat.setIsActive(false);
             privateChatRepository.save(chat);
+            privateChatDirectory.evict(chat.getUser1(), chat.getUser2());
+            inboxService.chatClosed(chat.getUser1(), chat.getUser2());
+            privateChatMessageCache.invalidate(chatId);
             System.out.println("Chat " + chatId + " deactivated");
         }
     }
@@ -0,0 +1,284 @@
+package com.irfan.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent GLOBAL and SYSTEM messages as serialized JSON in an
+ * off-heap ring of fixed-size slots, ordered by (timestamp, id) like the
+ * database pages. Requests that fall entirely inside the ring are answered
+ * by copying the slots into a ready-made {@code MessagePage} body, without
+ * touching the database or materializing message objects.
+ */
+@Service
+public class RecentMessageBuffer {
+
+    private static final byte[] PAGE_START = "{\"messages\":[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CURSOR_FIELD = "],\"nextCursor\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HAS_MORE_FIELD = ",\"hasMore\":".getBytes(StandardCharsets.US_ASCII);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MessageArchiveService messageArchiveService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.history.buffer.capacity:1000}")
+    private int capacity;
+
+    @Value("${chat.history.buffer.slot-bytes:2048}")
+    private int slotBytes;
+
+    private Arena arena;
+    private MemorySegment slots;
+
+    // Ring position i (0 = oldest) lives at physical slot (head + i) % capacity.
+    private long[] ids;
+    private long[] times;
+    private int[] lengths;
+    private int head;
+    private int count;
+    // Whether older messages exist in the database than the oldest one held here.
+    private boolean truncated;
+    private boolean closed;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Counter oversized;
+
+    @PostConstruct
+    public void start() {
+        arena = Arena.ofShared();
+        slots = arena.allocate((long) capacity * slotBytes, 8);
+        ids = new long[capacity];
+        times = new long[capacity];
+        lengths = new int[capacity];
+
+        FunctionCounter.builder("chat.history.buffer.requests", hits, AtomicLong::get)
+            .tag("result", "hit")
+            .description("Global history requests answered from the recent message buffer")
+            .register(meterRegistry);
+        FunctionCounter.builder("chat.history.buffer.requests", misses, AtomicLong::get)
+            .tag("result", "miss")
+            .description("Global history requests that had to go to the database")
+            .register(meterRegistry);
+        Gauge.builder("chat.history.buffer.hit.ratio", this, RecentMessageBuffer::hitRatio)
+            .description("Share of global history requests answered from the buffer")
+            .register(meterRegistry);
+        Gauge.builder("chat.history.buffer.size", this, buffer -> buffer.count)
+            .description("Messages held in the recent message buffer")
+            .register(meterRegistry);
+        oversized = Counter.builder("chat.history.buffer.oversized")
+            .description("Messages too large for a buffer slot; each one resets the buffer")
+            .register(meterRegistry);
+
+        warm();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        closed = true;
+        count = 0;
+        arena.close();
+    }
+
+    private void warm() {
+        try {
+            List<ChatMessage> latest = messageRepository.findLatestGlobalMessages(capacity + 1);
+            for (int i = Math.min(latest.size(), capacity) - 1; i >= 0; i--) {
+                append(latest.get(i));
+            }
+            synchronized (this) {
+                truncated = truncated || latest.size() > capacity || messageArchiveService.holds(null);
+            }
+            System.out.println("Warmed recent message buffer with " + count + " messages");
+        } catch (Exception e) {
+            System.err.println("Error warming recent message buffer: " + e.getMessage());
+            synchronized (this) {
+                count = 0;
+                truncated = true;
+            }
+        }
+    }
+
+    /**
+     * Adds a persisted message. Messages without an id cannot be used as cursors and are ignored.
+     */
+    public void append(ChatMessage message) {
+        if (message.getId() == null) {
+            return;
+        }
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            System.err.println("Error serializing message " + message.getId() + " for the buffer: " + e.getMessage());
+            return;
+        }
+        long id = message.getId();
+        long time = timeKey(message.getTimestamp());
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (json.length > slotBytes) {
+                // A gap would make pages served from the buffer silently skip this message.
+                oversized.increment();
+                count = 0;
+                truncated = true;
+                return;
+            }
+            if (count == capacity) {
+                if (compare(time, id, 0) < 0) {
+                    truncated = true;
+                    return;
+                }
+                head = (head + 1) % capacity;
+                count--;
+                truncated = true;
+            }
+
+            int position = count;
+            while (position > 0 && compare(time, id, position - 1) < 0) {
+                move(position - 1, position);
+                position--;
+            }
+            int slot = slot(position);
+            MemorySegment.copy(json, 0, slots, ValueLayout.JAVA_BYTE, (long) slot * slotBytes, json.length);
+            ids[slot] = id;
+            times[slot] = time;
+            lengths[slot] = json.length;
+            count++;
+        }
+    }
+
+    /**
+     * Returns the JSON body of the requested global history page, or null when
+     * the buffer does not hold every message the page needs.
+     */
+    public byte[] page(Long beforeId, LocalDateTime beforeTime, int limit) {
+        byte[] body = readPage(beforeId, beforeTime, limit);
+        (body != null ? hits : misses).incrementAndGet();
+        return body;
+    }
+
+    private synchronized byte[] readPage(Long beforeId, LocalDateTime beforeTime, int limit) {
+        if (count == 0) {
+            return null;
+        }
+
+        int end = count;
+        if (beforeId != null) {
+            end = indexOf(beforeId);
+            if (end < 0) {
+                return null;
+            }
+        } else if (beforeTime != null) {
+            long key = timeKey(beforeTime);
+            while (end > 0 && times[slot(end - 1)] >= key) {
+                end--;
+            }
+        }
+
+        int start = Math.max(0, end - limit);
+        if (start == 0 && end - start < limit && truncated) {
+            return null;
+        }
+        boolean hasMore = start > 0 || truncated;
+        byte[] cursor = (hasMore ? Long.toString(ids[slot(start)]) : "null").getBytes(StandardCharsets.US_ASCII);
+        byte[] more = String.valueOf(hasMore).getBytes(StandardCharsets.US_ASCII);
+
+        int size = PAGE_START.length + CURSOR_FIELD.length + cursor.length + HAS_MORE_FIELD.length + more.length + 1;
+        for (int i = start; i < end; i++) {
+            size += lengths[slot(i)] + (i > start ? 1 : 0);
+        }
+
+        byte[] body = new byte[size];
+        int offset = put(body, 0, PAGE_START);
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                body[offset++] = ',';
+            }
+            int slot = slot(i);
+            MemorySegment.copy(slots, ValueLayout.JAVA_BYTE, (long) slot * slotBytes, body, offset, lengths[slot]);
+            offset += lengths[slot];
+        }
+        offset = put(body, offset, CURSOR_FIELD);
+        offset = put(body, offset, cursor);
+        offset = put(body, offset, HAS_MORE_FIELD);
+        offset = put(body, offset, more);
+        body[offset] = '}';
+        return body;
+    }
+
+    public double hitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private int indexOf(long id) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (ids[slot(i)] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(long time, long id, int position) {
+        int slot = slot(position);
+        int byTime = Long.compare(time, times[slot]);
+        return byTime != 0 ? byTime : Long.compare(id, ids[slot]);
+    }
+
+    private void move(int from, int to) {
+        int source = slot(from);
+        int target = slot(to);
+        MemorySegment.copy(slots, (long) source * slotBytes, slots, (long) target * slotBytes, lengths[source]);
+        ids[target] = ids[source];
+        times[target] = times[source];
+        lengths[target] = lengths[source];
+    }
+
+    private int slot(int position) {
+        return (head + position) % capacity;
+    }
+
+    private static int put(byte[] target, int offset, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
+    // Postgres rounds created_at to microseconds; order by the same value it stores.
+    private static long timeKey(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + (time.getNano() + 500) / 1_000;
+    }
+}
@@ -0,0 +1,72 @@
+package com.irfan.chat.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out ids for rows written with plain JDBC, using the same sequences and
+ * the same pooled-lo scheme as the entities: each {@code nextval} reserves the
+ * block {@code [value, value + 50)}, so one round trip covers fifty inserts and
+ * the ids never collide with the ones Hibernate allocates.
+ */
+@Service
+public class SequenceIdAllocator {
+
+    public static final int ALLOCATION_SIZE = 50;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    private static class Block {
+        long next;
+        long last = -1;
+    }
+
+    public long nextId(String sequence) {
+        Block block = blocks.computeIfAbsent(sequence, name -> new Block());
+        synchronized (block) {
+            if (block.next > block.last) {
+                refill(block, fetch(sequence, 1).get(0));
+            }
+            return block.next++;
+        }
+    }
+
+    public long[] nextIds(String sequence, int count) {
+        long[] ids = new long[count];
+        Block block = blocks.computeIfAbsent(sequence, name -> new Block());
+        synchronized (block) {
+            int filled = 0;
+            while (filled < count && block.next <= block.last) {
+                ids[filled++] = block.next++;
+            }
+            if (filled < count) {
+                int needed = (count - filled + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE;
+                for (long lo : fetch(sequence, needed)) {
+                    refill(block, lo);
+                    while (filled < count && block.next <= block.last) {
+                        ids[filled++] = block.next++;
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private List<Long> fetch(String sequence, int blocks) {
+        return jdbcTemplate.queryForList(
+            "SELECT nextval(?::regclass) FROM generate_series(1, ?)", Long.class, sequence, blocks);
+    }
+
+    private static void refill(Block block, long lo) {
+        block.next = lo;
+        block.last = lo + ALLOCATION_SIZE - 1;
+    }
+}
@@ -0,0 +1,95 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.TypingEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typing indicators are transient: they live only in memory, are coalesced so a
+ * burst of keystrokes produces at most one frame per window, and expire on
+ * their own when the client never sends a stop event.
+ */
+@Service
+public class TypingIndicatorService {
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${chat.typing.window-ms:1000}")
+    private long windowMs;
+
+    @Value("${chat.typing.expiry-ms:5000}")
+    private long expiryMs;
+
+    private final Map<TypingKey, TypingState> active = new ConcurrentHashMap<>();
+
+    private record TypingKey(String recipient, String sender, String chatType, String chatId) {}
+
+    private static class TypingState {
+        long lastSentAt;
+        volatile long lastSeenAt;
+
+        TypingState(long now) {
+            this.lastSentAt = now;
+            this.lastSeenAt = now;
+        }
+    }
+
+    public void typing(String recipient, String sender, String chatType, String chatId) {
+        TypingKey key = new TypingKey(recipient, sender, chatType, chatId);
+        long now = System.currentTimeMillis();
+        boolean[] publish = new boolean[1];
+
+        active.compute(key, (k, state) -> {
+            if (state == null) {
+                publish[0] = true;
+                return new TypingState(now);
+            }
+            if (now - state.lastSentAt >= windowMs) {
+                state.lastSentAt = now;
+                publish[0] = true;
+            }
+            state.lastSeenAt = now;
+            return state;
+        });
+
+        if (publish[0]) {
+            send(key, true);
+        }
+    }
+
+    public void stopTyping(String recipient, String sender, String chatType, String chatId) {
+        TypingKey key = new TypingKey(recipient, sender, chatType, chatId);
+        if (active.remove(key) != null) {
+            send(key, false);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.typing.sweep-interval-ms:1000}")
+    public void expireStaleIndicators() {
+        long cutoff = System.currentTimeMillis() - expiryMs;
+        active.forEach((key, state) -> {
+            if (state.lastSeenAt < cutoff && active.remove(key, state)) {
+                send(key, false);
+            }
+        });
+    }
+
+    private void send(TypingKey key, boolean typing) {
+        try {
+            messagingTemplate.convertAndSendToUser(
+                key.recipient(),
+                "/queue/typing",
+                new TypingEvent(key.sender(), key.chatType(), key.chatId(), typing)
+            );
+        } catch (Exception e) {
+            System.err.println("Error sending typing indicator to " + key.recipient() + ": " + e.getMessage());
+        }
+    }
+}
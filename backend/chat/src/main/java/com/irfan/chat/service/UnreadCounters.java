@@ -0,0 +1,143 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.UnreadCounts;
+import com.irfan.chat.model.Notification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unread notification counts per recipient and chat, held in memory. The
+ * counts are rebuilt from the unread rows once at startup; after that the
+ * database is not consulted. Creating notifications adds to a chat's count and
+ * marking them read subtracts the rows the update actually changed, so a
+ * notification that races with a mark-as-read is neither lost nor counted twice.
+ *
+ * Chats whose count changed are collected per recipient and pushed to them on
+ * {@code /user/queue/unread} once per window.
+ */
+@Service
+public class UnreadCounters {
+
+    public static final String DESTINATION = "/queue/unread";
+
+    // Notifications without a chat id are counted under this key.
+    private static final String NO_CHAT = "";
+
+    private static final String LOAD_UNREAD =
+        "SELECT recipient, chat_id, sum(message_count) FROM notifications WHERE NOT read GROUP BY recipient, chat_id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // A recipient's chat map is only modified inside compute on the outer map,
+    // which serializes updates per recipient; readers may look at it at any time.
+    private final Map<String, Map<String, Long>> counts = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> changed = new ConcurrentHashMap<>();
+
+    private Counter pushes;
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("chat.notifications.unread.recipients", counts, Map::size)
+            .description("Recipients with unread notifications")
+            .register(meterRegistry);
+        pushes = Counter.builder("chat.notifications.unread.pushes")
+            .description("Unread count updates pushed to users")
+            .register(meterRegistry);
+        rebuild();
+    }
+
+    /**
+     * Replaces the counters with the unread rows in the database. Only safe while
+     * no notifications are being created or read, i.e. at startup.
+     */
+    public void rebuild() {
+        counts.clear();
+        try {
+            long[] chats = new long[1];
+            jdbcTemplate.query(LOAD_UNREAD, rs -> {
+                add(rs.getString(1), rs.getString(2), rs.getLong(3));
+                chats[0]++;
+            });
+            System.out.println("Rebuilt unread counters for " + counts.size() + " recipients from " + chats[0] + " chats");
+        } catch (Exception e) {
+            System.err.println("Error rebuilding unread counters: " + e.getMessage());
+        }
+        changed.clear();
+    }
+
+    public void added(Notification notification) {
+        add(notification.getRecipient(), notification.getChatId(), 1);
+    }
+
+    /**
+     * Records that {@code rows} notifications of the chat were just marked read.
+     */
+    public void read(String recipient, String chatId, long rows) {
+        if (rows > 0) {
+            add(recipient, chatId, -rows);
+        }
+    }
+
+    public long total(String recipient) {
+        long total = 0;
+        for (long count : counts.getOrDefault(recipient, Map.of()).values()) {
+            total += Math.max(0, count);
+        }
+        return total;
+    }
+
+    public UnreadCounts snapshot(String recipient) {
+        Map<String, Long> chats = new HashMap<>();
+        counts.getOrDefault(recipient, Map.of()).forEach((chatId, count) -> chats.put(chatId, Math.max(0, count)));
+        return new UnreadCounts(total(recipient), chats);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.notifications.unread-push-ms:250}")
+    public void flush() {
+        for (String recipient : changed.keySet()) {
+            Set<String> chatIds = changed.remove(recipient);
+            if (chatIds == null) {
+                continue;
+            }
+            Map<String, Long> current = counts.getOrDefault(recipient, Map.of());
+            Map<String, Long> chats = new HashMap<>();
+            for (String chatId : chatIds) {
+                chats.put(chatId, Math.max(0, current.getOrDefault(chatId, 0L)));
+            }
+            messagingTemplate.convertAndSendToUser(recipient, DESTINATION, new UnreadCounts(total(recipient), chats));
+            pushes.increment();
+        }
+    }
+
+    private void add(String recipient, String chatId, long delta) {
+        String key = chatId != null ? chatId : NO_CHAT;
+        counts.compute(recipient, (name, chats) -> {
+            if (chats == null) {
+                chats = new ConcurrentHashMap<>();
+            }
+            // a count that reaches zero is dropped; a transiently negative one is kept so it can cancel out
+            chats.merge(key, delta, (current, added) -> current + added == 0 ? null : current + added);
+            return chats.isEmpty() ? null : chats;
+        });
+        changed.computeIfAbsent(recipient, name -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+}
@@ -2,12 +2,23 @@ package com.irfan.chat.service;
 
 import com.irfan.chat.model.User;
 import com.irfan.chat.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class UserService {
@@ -15,6 +26,31 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${chat.users.cache-size:10000}")
+    private int cacheSize;
+
+    private static final String UPDATE_LAST_SEEN =
+        "UPDATE users u SET last_seen = v.seen FROM unnest(?::text[], ?::timestamp[]) AS v(username, seen) " +
+        "WHERE u.username = v.username AND (u.last_seen IS NULL OR u.last_seen < v.seen)";
+
+    private static final String RESET_ONLINE = "UPDATE users SET is_online = false WHERE is_online";
+
+    // Usernames never change, so a resolved user can be reused for as long as it is cached.
+    // Access-ordered, so the least recently resolved user is the one evicted.
+    private final Map<String, User> usersByName = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+            return size() > cacheSize;
+        }
+    });
+    private final Map<String, LocalDateTime> pendingLastSeen = new ConcurrentHashMap<>();
+
     private static final String[] ADJECTIVES = {
         "Happy", "Clever", "Brave", "Wise", "Swift", "Bright", "Calm", "Eager", 
         "Friendly", "Gentle", "Honest", "Kind", "Lucky", "Mighty", "Noble", "Proud"
@@ -55,50 +91,119 @@ public class UserService {
     }
 
     public UserCreationResult findOrCreateUserWithStatus(String username) {
+        User cached = usersByName.get(username);
+        if (cached != null) {
+            return new UserCreationResult(cached, false);
+        }
         Optional<User> existingUser = userRepository.findByUsername(username);
         if (existingUser.isPresent()) {
-            return new UserCreationResult(existingUser.get(), false);
+            return new UserCreationResult(cache(existingUser.get()), false);
         } else {
             User newUser = new User(username);
             newUser.setOnline(false);
             newUser.setLastSeen(LocalDateTime.now());
             User savedUser = userRepository.save(newUser);
-            return new UserCreationResult(savedUser, true);
+            return new UserCreationResult(cache(savedUser), true);
         }
     }
 
+    // Caches a detached copy, so callers on other threads never share a managed entity.
+    private User cache(User user) {
+        User copy = new User(user.getUsername());
+        copy.setId(user.getId());
+        copy.setCreatedAt(user.getCreatedAt());
+        copy.setOnline(user.isOnline());
+        copy.setLastSeen(user.getLastSeen());
+        usersByName.put(copy.getUsername(), copy);
+        return copy;
+    }
+
+    public void evictUser(String username) {
+        usersByName.remove(username);
+        pendingLastSeen.remove(username);
+    }
+
 
 
     public List<User> getOnlineUsers() {
-        return userRepository.findByOnlineTrue();
+        return presenceRegistry.getOnlineUsers();
     }
 
+    /**
+     * Registers a STOMP session for the user. Returns true if the user just came online.
+     */
+    public boolean connectSession(String username, String sessionId) {
+        User user = presenceRegistry.getOnlineUser(username);
+        if (user == null) {
+            user = findOrCreateUserWithStatus(username).getUser();
+        }
+        return presenceRegistry.connect(user, sessionId);
+    }
+
+    public boolean connectSession(User user, String sessionId) {
+        return presenceRegistry.connect(user, sessionId);
+    }
+
+    /**
+     * Drops a STOMP session. Returns true if it was the user's last one.
+     */
+    public boolean disconnectSession(String username, String sessionId) {
+        return presenceRegistry.disconnect(username, sessionId);
+    }
+
+    /**
+     * Records activity in memory; {@link #flushLastSeen()} writes it out in bulk.
+     */
     public void updateUserLastSeen(String username) {
-        userRepository.findByUsername(username).ifPresent(user -> {
-            user.setLastSeen(LocalDateTime.now());
-            userRepository.save(user);
-        });
+        pendingLastSeen.put(username, LocalDateTime.now());
     }
 
-    public void setUserOnline(String username, boolean online) {
-        userRepository.findByUsername(username).ifPresent(user -> {
-            user.setOnline(online);
-            user.setLastSeen(LocalDateTime.now());
-            userRepository.save(user);
-        });
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${chat.users.last-seen-flush-ms:5000}")
+    public void flushLastSeen() {
+        if (pendingLastSeen.isEmpty()) {
+            return;
+        }
+        List<String> usernames = new ArrayList<>();
+        List<LocalDateTime> seen = new ArrayList<>();
+        for (Map.Entry<String, LocalDateTime> entry : pendingLastSeen.entrySet()) {
+            // only drop the entry if no newer activity arrived meanwhile
+            if (pendingLastSeen.remove(entry.getKey(), entry.getValue())) {
+                usernames.add(entry.getKey());
+                seen.add(entry.getValue());
+            }
+        }
+        if (usernames.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(UPDATE_LAST_SEEN);
+                ps.setArray(1, connection.createArrayOf("text", usernames.toArray()));
+                ps.setArray(2, connection.createArrayOf("timestamp", seen.stream().map(Timestamp::valueOf).toArray()));
+                return ps;
+            });
+        } catch (Exception e) {
+            System.err.println("Error writing last seen for " + usernames.size() + " users, will retry: " + e.getMessage());
+            for (int i = 0; i < usernames.size(); i++) {
+                pendingLastSeen.merge(usernames.get(i), seen.get(i), (newer, older) -> newer.isAfter(older) ? newer : older);
+            }
+        }
     }
 
     public Optional<User> findByUsername(String username) {
         return userRepository.findByUsername(username);
     }
 
+    /**
+     * Marks everyone offline after a restart. Only rows still flagged online are
+     * touched, found through the partial index on {@code is_online}, so the cost
+     * does not grow with the size of the users table.
+     */
     public void resetAllUsersOffline() {
-        List<User> allUsers = userRepository.findAll();
-        allUsers.forEach(user -> {
-            if (user.isOnline()) {
-                user.setOnline(false);
-                userRepository.save(user);
-            }
-        });
+        presenceRegistry.clear();
+        usersByName.clear();
+        int reset = jdbcTemplate.update(RESET_ONLINE);
+        System.out.println("Marked " + reset + " users offline");
     }
 }
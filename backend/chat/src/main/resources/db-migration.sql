@@ -47,3 +47,143 @@ CREATE INDEX IF NOT EXISTS idx_notifications_timestamp ON notifications(timestam
 CREATE INDEX IF NOT EXISTS idx_notifications_chat_id ON notifications(chat_id);
 
 
+-- Last journal sequence flushed by the write-behind message writer
+CREATE TABLE IF NOT EXISTS message_journal_checkpoint (
+    id INT PRIMARY KEY,
+    last_seq BIGINT NOT NULL
+);
+
+
+-- Pooled-lo sequence ids (allocationSize = 50) replacing the BIGSERIAL/identity defaults.
+-- Each nextval reserves [value, value + 50), so the next value must clear both the
+-- highest existing id and any block already handed out.
+DO $$
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['users', 'private_chats', 'messages', 'notifications'] LOOP
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I INCREMENT BY 50', t || '_seq');
+        EXECUTE format('SELECT setval(%L, GREATEST((SELECT COALESCE(MAX(id), 0) + 1 FROM %I), '
+                       '(SELECT last_value + CASE WHEN is_called THEN 50 ELSE 0 END FROM %I)), false)',
+                       t || '_seq', t, t || '_seq');
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY IF EXISTS', t);
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP DEFAULT', t);
+        EXECUTE format('DROP SEQUENCE IF EXISTS %I', t || '_id_seq');
+    END LOOP;
+END $$;
+
+
+-- Keyset pagination of global history: (message_type, created_at, id)
+CREATE INDEX IF NOT EXISTS idx_messages_type_created_id ON messages(message_type, created_at, id);
+
+-- Cursor pagination of private conversations: (private_chat_id, created_at, id)
+CREATE INDEX IF NOT EXISTS idx_messages_chat_created_id ON messages(private_chat_id, created_at, id);
+
+-- Attach private messages written without a chat id to their conversation
+UPDATE messages m SET private_chat_id = (
+    SELECT pc.id FROM private_chats pc
+    WHERE (pc.user1 = m.sender AND pc.user2 = m.recipient) OR (pc.user1 = m.recipient AND pc.user2 = m.sender)
+    ORDER BY pc.is_active DESC, pc.id
+    LIMIT 1
+)
+WHERE m.message_type = 'PRIVATE' AND m.private_chat_id IS NULL;
+
+-- Startup reset of online flags only visits rows that are still online
+CREATE INDEX IF NOT EXISTS idx_users_online ON users(id) WHERE is_online;
+
+-- Rebuilding unread counters at startup reads only unread rows
+CREATE INDEX IF NOT EXISTS idx_notifications_unread ON notifications(recipient, chat_id) WHERE NOT read;
+
+-- Collapsed notifications: one unread row per (recipient, chat_id) with a message count.
+-- Merge existing unread duplicates into their latest row before setting
+-- chat.notifications.collapse.enabled=true (it ships off).
+ALTER TABLE notifications ADD COLUMN IF NOT EXISTS message_count INTEGER NOT NULL DEFAULT 1;
+
+WITH groups AS (
+    SELECT recipient, chat_id,
+           (array_agg(id ORDER BY timestamp DESC, id DESC))[1] AS keep_id,
+           sum(message_count) AS total
+    FROM notifications
+    WHERE NOT read AND chat_id IS NOT NULL
+    GROUP BY recipient, chat_id
+    HAVING count(*) > 1
+), merged AS (
+    UPDATE notifications n SET message_count = g.total
+    FROM groups g
+    WHERE n.id = g.keep_id
+)
+DELETE FROM notifications n
+USING groups g
+WHERE n.recipient = g.recipient AND n.chat_id = g.chat_id AND NOT n.read AND n.id <> g.keep_id;
+
+
+-- Partition notifications by day on timestamp. Retention then detaches and drops whole
+-- partitions instead of deleting rows. Creates a daily partition for every day that holds
+-- rows up to a week ahead, copies the rows over and rebuilds the indexes; the application
+-- does this by itself only while the table is still empty. The primary key has to include
+-- the partition key, so it becomes (id, timestamp).
+DO $$
+DECLARE
+    d DATE;
+BEGIN
+    IF (SELECT relkind FROM pg_class WHERE oid = 'notifications'::regclass) = 'p' THEN
+        RETURN;
+    END IF;
+
+    ALTER TABLE notifications RENAME TO notifications_unpartitioned;
+    CREATE TABLE notifications (LIKE notifications_unpartitioned INCLUDING DEFAULTS) PARTITION BY RANGE (timestamp);
+    CREATE TABLE notifications_default PARTITION OF notifications DEFAULT;
+
+    FOR d IN SELECT generate_series(
+                 COALESCE((SELECT min(timestamp)::date FROM notifications_unpartitioned), current_date),
+                 current_date + 7, INTERVAL '1 day')::date
+    LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF notifications FOR VALUES FROM (%L) TO (%L)',
+                       'notifications_p' || to_char(d, 'YYYYMMDD'), d, d + 1);
+    END LOOP;
+
+    INSERT INTO notifications SELECT * FROM notifications_unpartitioned;
+    DROP TABLE notifications_unpartitioned;
+
+    ALTER TABLE notifications ADD PRIMARY KEY (id, timestamp);
+    CREATE INDEX idx_notifications_recipient_time ON notifications(recipient, timestamp, id);
+    CREATE INDEX idx_notifications_unread ON notifications(recipient, chat_id) WHERE NOT read;
+END $$;
+
+-- Cursor pagination of notifications filtered by chat: (recipient, chat_id, timestamp, id).
+-- Unfiltered pages walk idx_notifications_recipient_time.
+CREATE INDEX IF NOT EXISTS idx_notifications_recipient_chat_time ON notifications(recipient, chat_id, timestamp, id);
+
+-- Private chats are stored under the canonical pair (user1 <= user2) so one unique index
+-- covers both directions. Move the messages of reversed duplicates into the chat kept for
+-- the pair (preferring an active one), drop the duplicates and swap the remaining reversed rows.
+-- Usernames are compared with COLLATE "C", which in a UTF-8 database is code point order, as
+-- the app's PrivateChat.compareUsernames; the database collation would put e.g. 'alice' before 'Bob'.
+WITH pairs AS (
+    SELECT id, first_value(id) OVER (
+               PARTITION BY LEAST(user1 COLLATE "C", user2 COLLATE "C"), GREATEST(user1 COLLATE "C", user2 COLLATE "C")
+               ORDER BY is_active DESC, id) AS keep_id
+    FROM private_chats
+), moved AS (
+    UPDATE messages m SET private_chat_id = p.keep_id
+    FROM pairs p
+    WHERE m.private_chat_id = p.id AND p.id <> p.keep_id
+)
+DELETE FROM private_chats c
+USING pairs p
+WHERE c.id = p.id AND p.id <> p.keep_id;
+
+UPDATE private_chats SET user1 = user2, user2 = user1 WHERE user1 COLLATE "C" > user2 COLLATE "C";
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_private_chats_pair ON private_chats(user1, user2);
+
+-- Full-text message search: a stored tsvector generated from the content and a GIN index
+-- over it. Adding the column rewrites the table, so on a large history run this during a
+-- quiet period before deploying; the index can then be built without blocking writes.
+ALTER TABLE messages ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (to_tsvector('english', content)) STORED;
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_messages_search ON messages USING gin (search_vector);
+
+-- Cold-tier archiving (chat.messages.archive.enabled) finds messages older than the cutoff
+-- through a BRIN index on created_at, which stays small on an insert-ordered table.
+CREATE INDEX IF NOT EXISTS idx_messages_created_brin ON messages USING brin (created_at);
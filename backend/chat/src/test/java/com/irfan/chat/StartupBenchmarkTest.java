@@ -0,0 +1,119 @@
+package com.irfan.chat;
+
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.repository.MessageRepository;
+import com.irfan.chat.repository.UserRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Time-to-ready of the application against a database seeded with 1M messages
+ * and 100k users, compared with the history and user scans startup used to do.
+ * Run with {@code -Dchat.benchmarks=true}.
+ */
+@EnabledIfSystemProperty(named = "chat.benchmarks", matches = "true")
+class StartupBenchmarkTest {
+
+	private static final String SENDER = "startup-benchmark";
+	private static final int MESSAGES = 1_000_000;
+	private static final int USERS = 100_000;
+	private static final int ONLINE_USERS = 1_000;
+	private static final int RUNS = 3;
+
+	// Ids come from whole pooled-lo blocks of the entity sequences, as the application allocates them.
+	private static final String SEED_MESSAGES = """
+		INSERT INTO messages (id, content, sender, message_type, created_at)
+		SELECT b.lo + o.n, 'startup benchmark message ' || (b.lo + o.n), ?, 'GLOBAL',
+		       TIMESTAMP '2000-01-01' + (b.lo + o.n) * INTERVAL '1 millisecond'
+		FROM (SELECT nextval('messages_seq') AS lo FROM generate_series(1, ? / 50)) b
+		CROSS JOIN generate_series(0, 49) AS o(n)
+		""";
+
+	private static final String SEED_USERS = """
+		INSERT INTO users (id, username, is_online, created_at, last_seen)
+		SELECT b.lo + o.n, ? || '-' || (b.lo + o.n), row_number() OVER () <= ?, now(), now()
+		FROM (SELECT nextval('users_seq') AS lo FROM generate_series(1, ? / 50)) b
+		CROSS JOIN generate_series(0, 49) AS o(n)
+		""";
+
+	private static ConfigurableApplicationContext seeding;
+
+	@BeforeAll
+	static void seed() {
+		seeding = start(new long[1]);
+		JdbcTemplate jdbcTemplate = seeding.getBean(JdbcTemplate.class);
+		long start = System.nanoTime();
+		jdbcTemplate.update(SEED_MESSAGES, SENDER, MESSAGES);
+		jdbcTemplate.update(SEED_USERS, SENDER, ONLINE_USERS, USERS);
+		jdbcTemplate.execute("ANALYZE messages");
+		jdbcTemplate.execute("ANALYZE users");
+		System.out.printf("Seeded %d messages and %d users in %.1f s%n", MESSAGES, USERS, (System.nanoTime() - start) / 1e9);
+	}
+
+	@AfterAll
+	static void cleanUp() {
+		JdbcTemplate jdbcTemplate = seeding.getBean(JdbcTemplate.class);
+		jdbcTemplate.update("DELETE FROM messages WHERE sender = ?", SENDER);
+		jdbcTemplate.update("DELETE FROM users WHERE username LIKE ?", SENDER + "-%");
+		seeding.close();
+	}
+
+	@Test
+	void startupDoesNotScanHistoryOrUsers() {
+		long legacyScanMs = legacyStartupScanMs();
+
+		long[] readyMs = new long[RUNS];
+		for (int i = 0; i < RUNS; i++) {
+			seeding.getBean(JdbcTemplate.class).update(
+				"UPDATE users SET is_online = true WHERE id IN (SELECT id FROM users WHERE username LIKE ? LIMIT ?)",
+				SENDER + "-%", ONLINE_USERS);
+			long[] ready = new long[1];
+			try (ConfigurableApplicationContext context = start(ready)) {
+				readyMs[i] = ready[0];
+				assertThat(context.getBean(JdbcTemplate.class).queryForObject(
+					"SELECT count(*) FROM users WHERE is_online", Long.class)).isZero();
+			}
+		}
+		Arrays.sort(readyMs);
+
+		System.out.printf("Time to ready with %d messages: median %d ms (runs %s); legacy history and user scan alone: %d ms%n",
+				MESSAGES, readyMs[RUNS / 2], Arrays.toString(readyMs), legacyScanMs);
+	}
+
+	// What verifyMessagePersistence and resetAllUsersOffline used to load on every start.
+	private static long legacyStartupScanMs() {
+		MessageRepository messageRepository = seeding.getBean(MessageRepository.class);
+		UserRepository userRepository = seeding.getBean(UserRepository.class);
+		long start = System.nanoTime();
+		int messages = messageRepository.findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType.GLOBAL, Pageable.unpaged()).size()
+				+ messageRepository.findByMessageTypeOrderByTimestampAsc(ChatMessage.MessageType.SYSTEM, Pageable.unpaged()).size();
+		int users = userRepository.findAll().size();
+		long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+		assertThat(messages).isGreaterThanOrEqualTo(MESSAGES);
+		assertThat(users).isGreaterThanOrEqualTo(USERS);
+		return elapsedMs;
+	}
+
+	private static ConfigurableApplicationContext start(long[] readyMs) {
+		long start = System.nanoTime();
+		return new SpringApplicationBuilder(ChatApplication.class)
+			.listeners((ApplicationListener<ApplicationReadyEvent>) event -> readyMs[0] = (System.nanoTime() - start) / 1_000_000)
+			.run("--server.port=0",
+				"--spring.jpa.show-sql=false",
+				"--logging.level.com.irfan.chat=INFO",
+				"--logging.level.org.springframework.web.socket=INFO",
+				"--logging.level.org.springframework.messaging=INFO");
+	}
+}
@@ -0,0 +1,92 @@
+package com.irfan.chat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.model.Notification;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Bytes and encode/decode CPU per payload for the JSON and CBOR encodings of the
+ * STOMP payloads the app sends most: a chat message, a notification, and a page
+ * of 50 messages of history. Run with {@code -Dchat.benchmarks=true}.
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "chat.benchmarks", matches = "true")
+class PayloadEncodingBenchmarkTest {
+
+	private static final int WARMUP = 20_000;
+	private static final int ITERATIONS = 100_000;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private PayloadEncodingInterceptor interceptor;
+
+	@Test
+	void compareEncodings() throws Exception {
+		LocalDateTime now = LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_456_000);
+
+		ChatMessage message = new ChatMessage("Are we still on for the release review at three?", "benchmark-alice", "benchmark-bob");
+		message.setId(1_234_567L);
+		message.setTimestamp(now);
+
+		Notification notification = new Notification("benchmark-bob", "benchmark-alice",
+				"Are we still on for the release review at three?", "PRIVATE", "4711", "PRIVATE_MESSAGE");
+		notification.setId(7_654_321L);
+		notification.setTimestamp(now);
+		notification.setCount(3);
+
+		List<ChatMessage> history = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			ChatMessage m = new ChatMessage("message number " + i + " in a longer conversation", i % 2 == 0 ? "benchmark-alice" : "benchmark-bob");
+			m.setId(1_000_000L + i);
+			m.setTimestamp(now.plusSeconds(i));
+			history.add(m);
+		}
+		MessagePage page = new MessagePage(history, 1_000_000L, true);
+
+		System.out.printf("%-14s %-5s %7s %12s %12s%n", "payload", "codec", "bytes", "encode ns", "decode ns");
+		run("ChatMessage", message, ChatMessage.class);
+		run("Notification", notification, Notification.class);
+		run("MessagePage", page, MessagePage.class);
+	}
+
+	private void run(String name, Object payload, Class<?> type) throws Exception {
+		int json = measure(name, "json", objectMapper, payload, type);
+		int cbor = measure(name, "cbor", interceptor.cborMapper(), payload, type);
+		assertThat(cbor).isLessThan(json);
+	}
+
+	private static int measure(String name, String codec, ObjectMapper mapper, Object payload, Class<?> type) throws Exception {
+		byte[] bytes = mapper.writeValueAsBytes(payload);
+		long sink = 0;
+		for (int i = 0; i < WARMUP; i++) {
+			sink += mapper.writeValueAsBytes(payload).length;
+			sink += mapper.readValue(bytes, type).hashCode() & 1;
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += mapper.writeValueAsBytes(payload).length;
+		}
+		double encode = (System.nanoTime() - start) / (double) ITERATIONS;
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += mapper.readValue(bytes, type).hashCode() & 1;
+		}
+		double decode = (System.nanoTime() - start) / (double) ITERATIONS;
+		System.out.printf("%-14s %-5s %7d %12.0f %12.0f%n", name, codec, bytes.length, encode, decode);
+		assertThat(sink).isPositive();
+		return bytes.length;
+	}
+}
@@ -0,0 +1,104 @@
+package com.irfan.chat.config;
+
+import com.irfan.chat.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class PayloadEncodingInterceptorTest {
+
+	private static final String CBOR_SESSION = "encoding-cbor";
+	private static final String JSON_SESSION = "encoding-json";
+	private static final String SOCKJS_SESSION = "encoding-sockjs";
+
+	@Autowired
+	private PayloadEncodingInterceptor interceptor;
+
+	@Autowired
+	@Qualifier("brokerMessageConverter")
+	private CompositeMessageConverter converter;
+
+	@AfterEach
+	void cleanUp() {
+		for (String session : new String[] {CBOR_SESSION, JSON_SESSION, SOCKJS_SESSION}) {
+			interceptor.preSend(frame(StompCommand.DISCONNECT, session, null, false), null);
+		}
+	}
+
+	@Test
+	void cborIsSentOnlyToSessionsThatNegotiatedIt() throws Exception {
+		interceptor.preSend(frame(StompCommand.CONNECT, CBOR_SESSION, "application/cbor, application/json", true), null);
+		interceptor.preSend(frame(StompCommand.CONNECT, JSON_SESSION, null, true), null);
+		interceptor.preSend(frame(StompCommand.CONNECT, SOCKJS_SESSION, "application/cbor", false), null);
+		assertThat(interceptor.usesCbor(CBOR_SESSION)).isTrue();
+		assertThat(interceptor.usesCbor(JSON_SESSION)).isFalse();
+		assertThat(interceptor.usesCbor(SOCKJS_SESSION)).isFalse();
+
+		ChatMessage message = new ChatMessage("hello", "encoding-alice");
+		message.setId(42L);
+		message.setTimestamp(LocalDateTime.of(2024, 5, 1, 12, 30, 15));
+		Message<?> converted = converter.toMessage(message, new MessageHeaders(null));
+
+		Message<?> json = interceptor.preSend(outbound(converted, JSON_SESSION), null);
+		assertThat(new String((byte[]) json.getPayload(), StandardCharsets.UTF_8)).contains("\"content\":\"hello\"");
+		assertThat(json.getHeaders().get(MessageHeaders.CONTENT_TYPE).toString()).isEqualTo("application/json");
+
+		Message<?> cbor = interceptor.preSend(outbound(converted, CBOR_SESSION), null);
+		assertThat(cbor.getHeaders().get(MessageHeaders.CONTENT_TYPE)).isEqualTo(PayloadEncodingInterceptor.CBOR_FRAME);
+		ChatMessage decoded = interceptor.cborMapper().readValue((byte[]) cbor.getPayload(), ChatMessage.class);
+		assertThat(decoded).usingRecursiveComparison().isEqualTo(message);
+		assertThat(((byte[]) cbor.getPayload()).length).isLessThan(((byte[]) json.getPayload()).length);
+
+		// a broadcast encodes once for every CBOR subscriber
+		Message<?> again = interceptor.preSend(outbound(converted, CBOR_SESSION), null);
+		assertThat(again.getPayload()).isSameAs(cbor.getPayload());
+
+		// frames sent in CBOR are read back by the CBOR converter
+		Message<byte[]> send = MessageBuilder.withPayload((byte[]) cbor.getPayload())
+				.setHeader(MessageHeaders.CONTENT_TYPE, PayloadEncodingInterceptor.CBOR)
+				.build();
+		assertThat(converter.fromMessage(send, ChatMessage.class)).usingRecursiveComparison().isEqualTo(message);
+	}
+
+	private static Message<byte[]> frame(StompCommand command, String session, String accept, boolean binaryFrames) {
+		StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+		accessor.setSessionId(session);
+		if (accept != null) {
+			accessor.setNativeHeader("accept", accept);
+		}
+		Map<String, Object> attributes = new HashMap<>();
+		if (binaryFrames) {
+			attributes.put(PayloadEncodingInterceptor.BINARY_FRAMES_ATTRIBUTE, true);
+		}
+		accessor.setSessionAttributes(attributes);
+		return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+	}
+
+	// What the broker hands the outbound channel for one subscriber.
+	private static Message<?> outbound(Message<?> converted, String session) {
+		SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		accessor.setSessionId(session);
+		accessor.setSubscriptionId("sub-0");
+		accessor.setDestination("/topic/public");
+		accessor.copyHeadersIfAbsent(converted.getHeaders());
+		return MessageBuilder.createMessage(converted.getPayload(), accessor.getMessageHeaders());
+	}
+}
@@ -0,0 +1,72 @@
+package com.irfan.chat.repository;
+
+import com.irfan.chat.model.Notification;
+import org.hibernate.SessionEventListener;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session.events.auto=com.irfan.chat.repository.NotificationRepositoryBatchingTest$JdbcRoundTrips")
+class NotificationRepositoryBatchingTest {
+
+	private static final int NOTIFICATIONS = 1000;
+
+	@Autowired
+	private NotificationRepository notificationRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+	private int batchSize;
+
+	@Test
+	void notificationSavesAreSentInJdbcBatches() {
+		List<Notification> notifications = new ArrayList<>();
+		for (int i = 0; i < NOTIFICATIONS; i++) {
+			notifications.add(new Notification("batch-recipient-" + i, "batch-sender", "hello", "GLOBAL", "general", "MESSAGE"));
+		}
+
+		JdbcRoundTrips.reset();
+		transactionTemplate.executeWithoutResult(status -> notificationRepository.saveAll(notifications));
+		long batches = JdbcRoundTrips.BATCHES.get();
+		long statements = JdbcRoundTrips.STATEMENTS.get();
+
+		System.out.printf("%d notification saves -> %d insert batches + %d sequence calls (batch size %d)%n",
+				NOTIFICATIONS, batches, statements, batchSize);
+
+		assertThat(batches).isEqualTo((NOTIFICATIONS + batchSize - 1) / batchSize);
+		assertThat(statements).isLessThanOrEqualTo(NOTIFICATIONS / 50 + 1);
+
+		notificationRepository.deleteAllInBatch(notifications);
+	}
+
+	public static class JdbcRoundTrips implements SessionEventListener {
+
+		static final AtomicLong BATCHES = new AtomicLong();
+		static final AtomicLong STATEMENTS = new AtomicLong();
+
+		static void reset() {
+			BATCHES.set(0);
+			STATEMENTS.set(0);
+		}
+
+		@Override
+		public void jdbcExecuteBatchStart() {
+			BATCHES.incrementAndGet();
+		}
+
+		@Override
+		public void jdbcExecuteStatementStart() {
+			STATEMENTS.incrementAndGet();
+		}
+	}
+}
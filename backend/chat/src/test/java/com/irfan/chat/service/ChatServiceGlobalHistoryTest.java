@@ -0,0 +1,95 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.repository.MessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class ChatServiceGlobalHistoryTest {
+
+	private static final LocalDateTime BASE = LocalDateTime.of(2100, 1, 1, 0, 0);
+	private static final int MESSAGES = 250;
+
+	@Autowired
+	private ChatService chatService;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	private final List<ChatMessage> saved = new ArrayList<>();
+
+	@BeforeEach
+	void seed() {
+		List<ChatMessage> messages = new ArrayList<>();
+		for (int i = 0; i < MESSAGES; i++) {
+			ChatMessage message = new ChatMessage("history " + i, "history-sender");
+			message.setMessageType(i % 10 == 0 ? ChatMessage.MessageType.SYSTEM : ChatMessage.MessageType.GLOBAL);
+			// pairs of messages share a timestamp so the id tiebreak is exercised
+			message.setTimestamp(BASE.plusSeconds(i / 2));
+			messages.add(message);
+
+			ChatMessage privateMessage = new ChatMessage("private " + i, "history-sender", "history-recipient");
+			privateMessage.setTimestamp(BASE.plusSeconds(i / 2));
+			messages.add(privateMessage);
+		}
+		saved.addAll(messageRepository.saveAll(messages));
+	}
+
+	@AfterEach
+	void cleanUp() {
+		messageRepository.deleteAllInBatch(saved);
+	}
+
+	@Test
+	void pagesWalkBackwardsWithoutGapsOrDuplicates() {
+		List<String> seen = new ArrayList<>();
+		Long cursor = null;
+		while (seen.size() < MESSAGES) {
+			MessagePage page = chatService.getGlobalHistory(cursor, null, 100);
+			assertThat(page.messages()).isNotEmpty();
+			assertThat(page.messages()).allMatch(m -> m.getMessageType() != ChatMessage.MessageType.PRIVATE);
+			assertThat(page.nextCursor()).isEqualTo(page.messages().get(0).getId());
+
+			List<String> contents = page.messages().stream()
+					.filter(m -> m.getSender().equals("history-sender"))
+					.map(ChatMessage::getContent)
+					.toList();
+			seen.addAll(0, contents);
+			cursor = page.nextCursor();
+		}
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < MESSAGES; i++) {
+			expected.add("history " + i);
+		}
+		assertThat(seen).isEqualTo(expected);
+	}
+
+	@Test
+	void timeCursorReturnsMessagesStrictlyBefore() {
+		MessagePage page = chatService.getGlobalHistory(null, BASE.plusSeconds(50), 10);
+
+		assertThat(page.messages()).hasSize(10);
+		assertThat(page.messages().get(9).getContent()).isEqualTo("history 99");
+		assertThat(page.messages().get(0).getContent()).isEqualTo("history 90");
+		assertThat(page.hasMore()).isTrue();
+	}
+
+	@Test
+	void pageSizeIsCapped() {
+		MessagePage page = chatService.getGlobalHistory(null, null, 10_000);
+
+		assertThat(page.messages()).hasSizeLessThanOrEqualTo(ChatService.MAX_PAGE_SIZE);
+	}
+}
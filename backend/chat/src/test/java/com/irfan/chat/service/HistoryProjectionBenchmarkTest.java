@@ -0,0 +1,98 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.repository.MessageRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latency and heap allocated per 1,000-message history page, reading managed
+ * entities as the history queries used to (native query mapped onto the entity,
+ * lazy proxies for its user and chat) against the detached row projection in a
+ * read-only transaction. Run with {@code -Dchat.benchmarks=true}.
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "chat.benchmarks", matches = "true")
+class HistoryProjectionBenchmarkTest {
+
+	private static final long CHAT_ID = -7001;
+	private static final int PAGE = 1000;
+	private static final int WARMUP = 200;
+	private static final int ITERATIONS = 500;
+
+	private static final String LEGACY_PAGE =
+		"SELECT id, content, sender, recipient, message_type, created_at, user_id, private_chat_id FROM messages "
+		+ "WHERE private_chat_id = :chatId ORDER BY created_at DESC, id DESC LIMIT :limit";
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	void cleanUp() {
+		jdbcTemplate.update("DELETE FROM messages WHERE private_chat_id = ?", CHAT_ID);
+		jdbcTemplate.update("DELETE FROM private_chats WHERE id = ?", CHAT_ID);
+	}
+
+	@Test
+	void thousandMessagePage() {
+		jdbcTemplate.update("INSERT INTO private_chats (id, user1, user2, created_at, is_active) VALUES (?, 'hbench-a', 'hbench-b', now(), true)", CHAT_ID);
+		jdbcTemplate.update("""
+			INSERT INTO messages (id, content, sender, recipient, message_type, created_at, private_chat_id)
+			SELECT -7000000 - g, 'history message number ' || g || ' of the benchmark conversation',
+			       CASE WHEN g % 2 = 0 THEN 'hbench-a' ELSE 'hbench-b' END,
+			       CASE WHEN g % 2 = 0 THEN 'hbench-b' ELSE 'hbench-a' END,
+			       'PRIVATE', now() - g * interval '1 second', ?
+			FROM generate_series(1, ?) g
+			""", CHAT_ID, PAGE);
+		jdbcTemplate.execute("ANALYZE messages");
+
+		@SuppressWarnings("unchecked")
+		Supplier<List<ChatMessage>> legacy = () -> entityManager.createNativeQuery(LEGACY_PAGE, ChatMessage.class)
+				.setParameter("chatId", CHAT_ID)
+				.setParameter("limit", PAGE)
+				.getResultList();
+		Supplier<List<ChatMessage>> projected = () -> messageRepository.findLatestChatMessages(CHAT_ID, PAGE);
+
+		assertThat(projected.get()).usingRecursiveFieldByFieldElementComparatorIgnoringFields("user", "privateChat")
+				.containsExactlyElementsOf(legacy.get());
+
+		System.out.printf("%d-message history page:%n  managed entities: %s%n  row projection:   %s%n",
+				PAGE, measure(legacy), measure(projected));
+	}
+
+	private static String measure(Supplier<List<ChatMessage>> page) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		for (int i = 0; i < WARMUP; i++) {
+			assertThat(page.get()).hasSize(PAGE);
+		}
+		long[] latencies = new long[ITERATIONS];
+		long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			page.get();
+			latencies[i] = System.nanoTime() - start;
+		}
+		long allocated = (threads.getCurrentThreadAllocatedBytes() - allocatedBefore) / ITERATIONS;
+		Arrays.sort(latencies);
+		return String.format("p50 %6.2f ms  p99 %6.2f ms  %7.1f KiB allocated", latencies[ITERATIONS / 2] / 1e6,
+				latencies[(int) (ITERATIONS * 0.99)] / 1e6, allocated / 1024.0);
+	}
+}
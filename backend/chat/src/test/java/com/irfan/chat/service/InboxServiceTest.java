@@ -0,0 +1,85 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.InboxEntry;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+class InboxServiceTest {
+
+	private static final String ANN = "inbox-ann";
+	private static final String BEN = "inbox-ben";
+	private static final String CARL = "inbox-carl";
+
+	@Autowired
+	private InboxService inboxService;
+
+	@Autowired
+	private PrivateChatService privateChatService;
+
+	@Autowired
+	private PrivateChatDirectory privateChatDirectory;
+
+	@Autowired
+	private NotificationService notificationService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@AfterEach
+	void cleanUp() {
+		for (String user : List.of(ANN, BEN, CARL)) {
+			notificationService.markAllNotificationsAsRead(user);
+			jdbcTemplate.update("DELETE FROM notifications WHERE recipient = ?", user);
+		}
+		jdbcTemplate.update("DELETE FROM messages WHERE sender IN (?, ?, ?)", ANN, BEN, CARL);
+		for (String other : List.of(BEN, CARL)) {
+			privateChatService.deactivateChat(privateChatService.getOrCreatePrivateChat(ANN, other).getId());
+		}
+		jdbcTemplate.update("DELETE FROM private_chats WHERE user1 = ?", ANN);
+	}
+
+	@Test
+	void inboxFollowsMessagesAndReadsWithoutGoingBackToTheDatabase() {
+		send(BEN, ANN, "hi ann");
+		send(ANN, CARL, "hello carl");
+		send(CARL, ANN, "hey");
+
+		assertThat(inboxService.inbox(ANN))
+				.extracting(InboxEntry::otherUser, InboxEntry::lastMessage, InboxEntry::unread)
+				.containsExactly(tuple(CARL, "hey", 1L), tuple(BEN, "hi ann", 1L));
+
+		double hits = hits();
+		send(BEN, ANN, "are you there?");
+		notificationService.markNotificationsAsRead(ANN, CARL);
+
+		assertThat(inboxService.inbox(ANN))
+				.extracting(InboxEntry::otherUser, InboxEntry::lastMessage, InboxEntry::unread)
+				.containsExactly(tuple(BEN, "are you there?", 2L), tuple(CARL, "hey", 0L));
+		assertThat(hits()).isEqualTo(hits + 1);
+
+		privateChatService.deactivateChat(privateChatService.getOrCreatePrivateChat(ANN, BEN).getId());
+		assertThat(inboxService.inbox(ANN)).extracting(InboxEntry::otherUser).containsExactly(CARL);
+	}
+
+	private void send(String sender, String recipient, String content) {
+		privateChatService.sendPrivateMessage(sender, recipient, content);
+		notificationService.sendPrivateMessageNotification(recipient, sender, content);
+	}
+
+	private double hits() {
+		return meterRegistry.get("chat.inbox.requests").tag("result", "hit").functionCounter().count();
+	}
+}
@@ -0,0 +1,184 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.model.PrivateChat;
+import com.irfan.chat.repository.MessageRepository;
+import com.irfan.chat.repository.PrivateChatRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class MessageArchiveServiceTest {
+
+	private static final LocalDateTime ARCHIVED = LocalDateTime.of(2001, 3, 1, 9, 0);
+	private static final LocalDateTime RECENT = LocalDateTime.of(2024, 3, 1, 9, 0);
+	private static final LocalDateTime CUTOFF = LocalDateTime.of(2002, 1, 1, 0, 0);
+
+	@TempDir
+	Path archiveDir;
+
+	@Autowired
+	private MessageArchiveService archiveServiceBean;
+
+	@Autowired
+	private PrivateChatService privateChatService;
+
+	@Autowired
+	private ChatService chatService;
+
+	@Autowired
+	private PrivateChatMessageCache privateChatMessageCache;
+
+	@Autowired
+	private PrivateChatRepository privateChatRepository;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private MessageArchiveService messageArchiveService;
+	private PrivateChat chat;
+	private final List<Long> ids = new ArrayList<>();
+
+	@BeforeEach
+	void seed() throws Exception {
+		restart();
+		chat = privateChatRepository.save(new PrivateChat("archive-alice", "archive-bob"));
+		List<ChatMessage> messages = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			ChatMessage message = new ChatMessage("dm " + i, i % 2 == 0 ? "archive-alice" : "archive-bob", i % 2 == 0 ? "archive-bob" : "archive-alice");
+			message.setPrivateChat(chat);
+			message.setTimestamp((i < 20 ? ARCHIVED : RECENT).plusSeconds(i / 3));
+			messages.add(message);
+		}
+		ChatMessage global = new ChatMessage("archived hello", "archive-alice");
+		global.setTimestamp(ARCHIVED);
+		messages.add(global);
+		messageRepository.saveAll(messages).forEach(message -> ids.add(message.getId()));
+	}
+
+	@AfterEach
+	void cleanUp() {
+		messageArchiveService.stop();
+		ReflectionTestUtils.setField(chatService, "messageArchiveService", archiveServiceBean);
+		ReflectionTestUtils.setField(privateChatService, "messageArchiveService", archiveServiceBean);
+		jdbcTemplate.update("DELETE FROM messages WHERE sender IN ('archive-alice', 'archive-bob')");
+		privateChatMessageCache.invalidate(chat.getId());
+		privateChatRepository.delete(chat);
+	}
+
+	@Test
+	void historyReadsAcrossTheDatabaseAndTheArchive() throws Exception {
+		assertThat(messageArchiveService.archiveOlderThan(CUTOFF)).isEqualTo(21);
+		assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM messages WHERE private_chat_id = ?", Long.class, chat.getId()))
+				.isEqualTo(10L);
+		assertThat(messageArchiveService.holds(chat.getId())).isTrue();
+
+		assertHistory();
+
+		// segments are found again after a restart
+		restart();
+		assertHistory();
+
+		assertThat(chatService.getGlobalHistory(null, CUTOFF, 10).messages())
+				.extracting(ChatMessage::getContent)
+				.containsExactly("archived hello");
+	}
+
+	@Test
+	void rowsArchivedTwiceAfterAnInterruptedRunAreReadOnce() throws Exception {
+		// the archiver wrote a segment and stopped before deleting its rows
+		archive().append(Map.of(chat.getId(), messageRepository.findAllById(ids.subList(0, 20))));
+		assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM messages WHERE private_chat_id = ?", Long.class, chat.getId()))
+				.isEqualTo(30L);
+
+		// pages crossing the boundary see those messages in both tiers
+		assertHistory();
+
+		// the next run archives the same rows again, into a second segment
+		assertThat(messageArchiveService.archiveOlderThan(CUTOFF)).isEqualTo(21);
+		assertThat(archive().segments()).isEqualTo(2);
+		assertHistory();
+
+		restart();
+		assertThat(archive().segments()).isEqualTo(2);
+		assertHistory();
+	}
+
+	@Test
+	void leftoverTemporarySegmentIsRemovedOnOpen() throws Exception {
+		// an append interrupted before its rename, under the name the next segment gets
+		Path leftover = archiveDir.resolve(String.format("%020d.segment.tmp", 1));
+		Files.write(leftover, new byte[] {1, 2, 3});
+
+		restart();
+		assertThat(leftover).doesNotExist();
+		assertThat(archive().segments()).isZero();
+
+		assertThat(messageArchiveService.archiveOlderThan(CUTOFF)).isEqualTo(21);
+		try (var files = Files.list(archiveDir)) {
+			assertThat(files.map(path -> path.getFileName().toString()))
+					.containsExactly(String.format("%020d.segment", 1));
+		}
+		assertHistory();
+	}
+
+	// A service of its own over the temporary directory, standing in for the application's in the readers.
+	private void restart() throws Exception {
+		if (messageArchiveService != null) {
+			messageArchiveService.stop();
+		}
+		messageArchiveService = new MessageArchiveService();
+		ReflectionTestUtils.setField(messageArchiveService, "messageRepository", messageRepository);
+		ReflectionTestUtils.setField(messageArchiveService, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(messageArchiveService, "meterRegistry", new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(messageArchiveService, "archiveDir", archiveDir.toString());
+		ReflectionTestUtils.setField(messageArchiveService, "batchSize", 50000);
+		ReflectionTestUtils.setField(messageArchiveService, "blockMessages", 256);
+		messageArchiveService.start();
+		ReflectionTestUtils.setField(chatService, "messageArchiveService", messageArchiveService);
+		ReflectionTestUtils.setField(privateChatService, "messageArchiveService", messageArchiveService);
+	}
+
+	private MessageArchive archive() {
+		return (MessageArchive) ReflectionTestUtils.getField(messageArchiveService, "archive");
+	}
+
+	private void assertHistory() {
+		privateChatMessageCache.invalidate(chat.getId());
+		MessagePage latest = privateChatService.getChatMessages(chat.getId(), null, null, 15);
+		assertThat(latest.messages()).extracting(ChatMessage::getId).containsExactlyElementsOf(ids.subList(15, 30));
+		assertThat(latest.hasMore()).isTrue();
+
+		privateChatMessageCache.invalidate(chat.getId());
+		MessagePage older = privateChatService.getChatMessages(chat.getId(), latest.nextCursor(), null, 10);
+		assertThat(older.messages()).extracting(ChatMessage::getId).containsExactlyElementsOf(ids.subList(5, 15));
+
+		MessagePage oldest = privateChatService.getChatMessages(chat.getId(), older.nextCursor(), null, 10);
+		assertThat(oldest.messages()).extracting(ChatMessage::getId).containsExactlyElementsOf(ids.subList(0, 5));
+		assertThat(oldest.hasMore()).isFalse();
+
+		MessagePage forward = privateChatService.getChatMessages(chat.getId(), null, ids.get(13), 10);
+		assertThat(forward.messages()).extracting(ChatMessage::getId).containsExactlyElementsOf(ids.subList(14, 24));
+		assertThat(forward.hasMore()).isTrue();
+	}
+}
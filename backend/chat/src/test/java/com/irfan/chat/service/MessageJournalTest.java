@@ -0,0 +1,159 @@
+package com.irfan.chat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageJournalTest {
+
+	private static final LocalDateTime SENT = LocalDateTime.of(2024, 2, 1, 8, 30, 0, 123_000_000);
+
+	@TempDir
+	Path dir;
+
+	private MessageJournal journal;
+	private final List<MessageJournal.Entry> durable = new ArrayList<>();
+
+	@AfterEach
+	void close() throws IOException {
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	@Test
+	void reopeningReplaysEverythingAfterTheCheckpoint() throws Exception {
+		List<MessageJournal.Entry> replayed = open(Long.MAX_VALUE / 2, 0);
+		assertThat(replayed).isEmpty();
+		for (int i = 1; i <= 5; i++) {
+			assertThat(append(i)).isEqualTo(i);
+		}
+		assertThat(durable).extracting(MessageJournal.Entry::seq).containsExactly(1L, 2L, 3L, 4L, 5L);
+		journal.close();
+
+		replayed = open(Long.MAX_VALUE / 2, 3);
+		assertThat(replayed).containsExactlyElementsOf(durable.subList(3, 5));
+		assertThat(replayed.get(0).privateChatId()).isEqualTo(40L);
+		assertThat(replayed.get(0).userId()).isNull();
+		assertThat(replayed.get(0).timestamp()).isEqualTo(SENT.plusSeconds(4));
+
+		// sequences carry on after the replayed ones rather than reusing them
+		assertThat(append(6)).isEqualTo(6);
+	}
+
+	@Test
+	void tornTailOfTheLastSegmentIsTruncated() throws Exception {
+		open(Long.MAX_VALUE / 2, 0);
+		append(1);
+		append(2);
+		journal.close();
+		Path segment = onlySegment();
+		long intact = Files.size(segment);
+
+		// a record whose header promises more bytes than were written
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.allocate(12).putInt(200).putInt(0).putInt(7).flip());
+		}
+		assertThat(open(Long.MAX_VALUE / 2, 0)).extracting(MessageJournal.Entry::seq).containsExactly(1L, 2L);
+		assertThat(Files.size(segment)).isEqualTo(intact);
+	}
+
+	@Test
+	void recordFailingItsChecksumIsTruncatedWithEverythingAfterIt() throws Exception {
+		open(Long.MAX_VALUE / 2, 0);
+		append(1);
+		long firstRecord = Files.size(onlySegment());
+		append(2);
+		append(3);
+		journal.close();
+		Path segment = onlySegment();
+
+		// flip a payload byte of the second record
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer b = ByteBuffer.allocate(1);
+			channel.read(b, firstRecord + 20);
+			channel.write(ByteBuffer.wrap(new byte[] {(byte) (b.get(0) ^ 0x5a)}), firstRecord + 20);
+		}
+		assertThat(open(Long.MAX_VALUE / 2, 0)).extracting(MessageJournal.Entry::seq).containsExactly(1L);
+		assertThat(Files.size(segment)).isEqualTo(firstRecord);
+	}
+
+	@Test
+	void corruptionBeforeTheLastSegmentIsNotSilentlyDropped() throws Exception {
+		open(1, 0);
+		append(1);
+		append(2);
+		journal.close();
+		Path first = segments().get(0);
+		try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+			channel.truncate(Files.size(first) - 3);
+		}
+
+		journal = new MessageJournal(dir, 1, 16, durable::addAll, new SimpleMeterRegistry().timer("ack"));
+		assertThatThrownBy(() -> journal.open(0)).isInstanceOf(IOException.class);
+		journal = null;
+	}
+
+	@Test
+	void segmentsAreDiscardedOnceTheCheckpointPassesThem() throws Exception {
+		// one-byte segments: every batch after the first rolls over to a new file
+		open(1, 0);
+		for (int i = 1; i <= 4; i++) {
+			append(i);
+		}
+		assertThat(segmentNames()).containsExactly(1L, 2L, 3L, 4L);
+
+		journal.discardUpTo(2);
+		assertThat(segmentNames()).containsExactly(3L, 4L);
+
+		// the active segment is kept even when the checkpoint covers it
+		journal.discardUpTo(4);
+		assertThat(segmentNames()).containsExactly(4L);
+		journal.close();
+
+		assertThat(open(1, 2)).extracting(MessageJournal.Entry::seq).containsExactly(4L);
+	}
+
+	private List<MessageJournal.Entry> open(long segmentBytes, long checkpoint) throws IOException {
+		journal = new MessageJournal(dir, segmentBytes, 16, durable::addAll, new SimpleMeterRegistry().timer("ack"));
+		List<MessageJournal.Entry> replayed = journal.open(checkpoint);
+		journal.start();
+		return replayed;
+	}
+
+	private long append(int n) {
+		return journal.append(new MessageJournal.Entry(0, 1000 + n, "message " + n, "journal-sender", null, "PRIVATE",
+				SENT.plusSeconds(n), null, 10L * n)).join();
+	}
+
+	private Path onlySegment() throws IOException {
+		List<Path> segments = segments();
+		assertThat(segments).hasSize(1);
+		return segments.get(0);
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.sorted().toList();
+		}
+	}
+
+	private List<Long> segmentNames() throws IOException {
+		return segments().stream().map(path -> Long.parseLong(path.getFileName().toString().replace(".journal", ""))).toList();
+	}
+}
@@ -0,0 +1,107 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.config.StompMetrics;
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.search.Search;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class MessageLifecycleMetricsTest {
+
+	private static final String ALICE = "metrics-alice";
+	private static final String BOB = "metrics-bob";
+
+	@Autowired
+	private ChatService chatService;
+
+	@Autowired
+	private PrivateChatService privateChatService;
+
+	@Autowired
+	private NotificationService notificationService;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private StompMetrics stompMetrics;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@AfterEach
+	void cleanUp() {
+		notificationService.markAllNotificationsAsRead(BOB);
+		jdbcTemplate.update("DELETE FROM notifications WHERE recipient = ?", BOB);
+		jdbcTemplate.update("DELETE FROM messages WHERE sender = ?", ALICE);
+		privateChatService.deactivateChat(privateChatService.getOrCreatePrivateChat(ALICE, BOB).getId());
+		jdbcTemplate.update("DELETE FROM private_chats WHERE user1 = ? AND user2 = ?", ALICE, BOB);
+		userRepository.findByUsername(ALICE).ifPresent(userRepository::delete);
+		userService.evictUser(ALICE);
+	}
+
+	@Test
+	void sendPathsAreTimedStepByStep() {
+		long global = count("chat.messages.send", "global");
+		long privateSends = count("chat.messages.send", "private");
+		long privateDeliveries = count("chat.messages.deliver", "private");
+		long notifications = meterRegistry.get("chat.notifications.send").timer().count();
+		long notificationWrites = meterRegistry.get("chat.notifications.persist").timer().count();
+
+		chatService.sendGlobalMessage(new ChatMessage("hello everyone", ALICE));
+		assertThat(count("chat.messages.send", "global")).isEqualTo(global + 1);
+		assertThat(count("chat.messages.persist", "global")).isPositive();
+		assertThat(count("chat.messages.deliver", "global")).isPositive();
+
+		ChatMessage saved = privateChatService.sendPrivateMessage(ALICE, BOB, "hi bob");
+		privateChatService.deliverPrivateMessage(saved);
+		assertThat(count("chat.messages.send", "private")).isEqualTo(privateSends + 1);
+		assertThat(count("chat.messages.deliver", "private")).isEqualTo(privateDeliveries + 1);
+
+		notificationService.sendPrivateMessageNotification(BOB, ALICE, "hi bob");
+		assertThat(meterRegistry.get("chat.notifications.send").timer().count()).isEqualTo(notifications + 1);
+		assertThat(meterRegistry.get("chat.notifications.persist").timer().count()).isEqualTo(notificationWrites + 1);
+		assertThat(meterRegistry.get("chat.notifications.deliver").timer().totalTime(TimeUnit.NANOSECONDS)).isPositive();
+	}
+
+	@Test
+	void stompTrafficAndPoolsAreGauged() {
+		for (String session : new String[] {"metrics-session-1", "metrics-session-2"}) {
+			SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+			accessor.setSessionId(session);
+			accessor.setDestination("/queue/private-user" + session);
+			accessor.setHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION, "/user/queue/private");
+			stompMetrics.outbound().preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+		}
+		assertThat(meterRegistry.get("chat.stomp.messages").tag("direction", "outbound").tag("destination", "/user/queue/private")
+				.counter().count()).isGreaterThanOrEqualTo(2);
+
+		assertThat(meterRegistry.get("chat.stomp.channel.queue").tag("channel", "inbound").gauge().value()).isNotNegative();
+		assertThat(meterRegistry.get("chat.stomp.channel.queue").tag("channel", "outbound").gauge().value()).isNotNegative();
+		assertThat(meterRegistry.get("chat.websocket.sessions").tag("transport", "websocket").gauge().value()).isNotNegative();
+		assertThat(Search.in(meterRegistry).name("hikaricp.connections.active").gauge()).isNotNull();
+	}
+
+	private long count(String name, String type) {
+		return meterRegistry.get(name).tag("type", type).timer().count();
+	}
+}
@@ -0,0 +1,170 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.ChatMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs write-behind persistence against the test database with its own journal
+ * directory, so the shared context can keep write-behind switched off.
+ */
+@SpringBootTest
+class MessagePersistenceWriteBehindTest {
+
+	private static final String SENDER = "write-behind-sender";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private SequenceIdAllocator sequenceIdAllocator;
+
+	@TempDir
+	Path journalDir;
+
+	private FailingTransactionTemplate transactionTemplate;
+	private MeterRegistry meterRegistry;
+	private MessagePersistenceService service;
+
+	@BeforeEach
+	void setUp() {
+		jdbcTemplate.update("DELETE FROM messages WHERE sender = ?", SENDER);
+		jdbcTemplate.execute("DROP TABLE IF EXISTS message_journal_checkpoint");
+		transactionTemplate = new FailingTransactionTemplate(transactionManager);
+	}
+
+	@AfterEach
+	void cleanUp() throws Exception {
+		transactionTemplate.failing = false;
+		if (service != null) {
+			service.stop();
+		}
+		jdbcTemplate.update("DELETE FROM messages WHERE sender = ?", SENDER);
+		jdbcTemplate.execute("DROP TABLE IF EXISTS message_journal_checkpoint");
+	}
+
+	@Test
+	void failedFlushKeepsMessagesQueuedUntilTheDatabaseRecovers() throws Exception {
+		service = startService();
+		transactionTemplate.failing = true;
+
+		// saves are acknowledged by the journal even though the database is refusing writes
+		for (int i = 1; i <= 3; i++) {
+			service.save(new ChatMessage("queued " + i, SENDER));
+		}
+		await(() -> transactionTemplate.attempts >= 2);
+		assertThat(storedContents()).isEmpty();
+
+		transactionTemplate.failing = false;
+		await(() -> storedContents().size() == 3);
+		assertThat(storedContents()).containsExactly("queued 1", "queued 2", "queued 3");
+		await(() -> pending() == 0);
+	}
+
+	@Test
+	void restartReplaysOnlyWhatWasNotCheckpointed() throws Exception {
+		service = startService();
+		service.save(new ChatMessage("flushed 1", SENDER));
+		service.save(new ChatMessage("flushed 2", SENDER));
+		await(() -> storedContents().size() == 2);
+		long checkpoint = checkpoint();
+
+		// the database goes away with two messages only in the journal, then the node stops
+		transactionTemplate.failing = true;
+		service.save(new ChatMessage("journaled 3", SENDER));
+		service.save(new ChatMessage("journaled 4", SENDER));
+		await(() -> transactionTemplate.attempts >= 1);
+		service.stop();
+		service = null;
+		assertThat(storedContents()).containsExactly("flushed 1", "flushed 2");
+		assertThat(checkpoint()).isEqualTo(checkpoint);
+
+		transactionTemplate = new FailingTransactionTemplate(transactionManager);
+		service = startService();
+		await(() -> storedContents().size() >= 4);
+		service.save(new ChatMessage("after restart 5", SENDER));
+		await(() -> storedContents().size() >= 5);
+
+		assertThat(storedContents()).containsExactly("flushed 1", "flushed 2", "journaled 3", "journaled 4", "after restart 5");
+		assertThat(checkpoint()).isEqualTo(checkpoint + 3);
+	}
+
+	private MessagePersistenceService startService() throws Exception {
+		MessagePersistenceService persistence = new MessagePersistenceService();
+		meterRegistry = new SimpleMeterRegistry();
+		ReflectionTestUtils.setField(persistence, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(persistence, "transactionTemplate", transactionTemplate);
+		ReflectionTestUtils.setField(persistence, "sequenceIdAllocator", sequenceIdAllocator);
+		ReflectionTestUtils.setField(persistence, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(persistence, "writeBehind", true);
+		ReflectionTestUtils.setField(persistence, "flushBatchSize", 500);
+		ReflectionTestUtils.setField(persistence, "flushIntervalMs", 20L);
+		ReflectionTestUtils.setField(persistence, "journalDir", journalDir.toString());
+		ReflectionTestUtils.setField(persistence, "segmentBytes", 1L);
+		ReflectionTestUtils.setField(persistence, "maxSyncBatch", 16);
+		persistence.start();
+		return persistence;
+	}
+
+	private List<String> storedContents() {
+		return jdbcTemplate.queryForList("SELECT content FROM messages WHERE sender = ? ORDER BY id", String.class, SENDER);
+	}
+
+	private long checkpoint() {
+		return jdbcTemplate.queryForObject("SELECT last_seq FROM message_journal_checkpoint WHERE id = 1", Long.class);
+	}
+
+	private double pending() {
+		return meterRegistry.get("chat.messages.write-behind.pending").gauge().value();
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private static class FailingTransactionTemplate extends TransactionTemplate {
+
+		volatile boolean failing;
+		volatile int attempts;
+
+		FailingTransactionTemplate(PlatformTransactionManager transactionManager) {
+			super(transactionManager);
+		}
+
+		@Override
+		public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+			if (failing) {
+				attempts++;
+				throw new TransactionSystemException("database unavailable");
+			}
+			return super.execute(action);
+		}
+	}
+}
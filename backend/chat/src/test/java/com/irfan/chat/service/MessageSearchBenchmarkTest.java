@@ -0,0 +1,91 @@
+package com.irfan.chat.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Search latency on a seeded corpus of {@code chat.benchmarks.search.rows}
+ * messages (default 500,000) drawn from a skewed vocabulary, so terms range from
+ * matching almost half the corpus to a handful of rows. A fifth of the messages
+ * are private, spread over chats of which the searching user takes part in a few.
+ * Seeded rows use negative ids so they never meet the sequences. Run with
+ * {@code -Dchat.benchmarks=true}.
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "chat.benchmarks", matches = "true")
+class MessageSearchBenchmarkTest {
+
+	private static final String SEARCHER = "sbench-me";
+	private static final int CHATS = 1000;
+	private static final int ITERATIONS = 200;
+
+	private static final String SEED_CHATS = """
+		INSERT INTO private_chats (id, user1, user2, created_at, is_active)
+		SELECT -g, CASE WHEN g <= 10 THEN 'sbench-me' ELSE 'sbench-a' || g END, 'sbench-z' || g, now(), true
+		FROM generate_series(1, ?) g
+		""";
+
+	// Word w<n> is drawn with n = 5000 * random()^3: w0 is in ~40% of messages, w4000 in a few hundred.
+	private static final String SEED_MESSAGES = """
+		INSERT INTO messages (id, content, sender, recipient, message_type, created_at, private_chat_id)
+		SELECT -g, words.content, 'sbench-sender',
+		       CASE WHEN g % 5 = 0 THEN 'sbench-z' || (g / 5 % ? + 1) END,
+		       CASE WHEN g % 5 = 0 THEN 'PRIVATE' ELSE 'GLOBAL' END,
+		       now() - g * interval '1 second',
+		       CASE WHEN g % 5 = 0 THEN -(g / 5 % ? + 1) END
+		FROM generate_series(1, ?) g
+		CROSS JOIN LATERAL (
+		    SELECT string_agg('w' || floor(5000 * power(random(), 3))::int, ' ') AS content
+		    FROM generate_series(1, 8 + (g % 3)) WHERE g > 0
+		) words
+		""";
+
+	@Autowired
+	private MessageSearchService messageSearchService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	void cleanUp() {
+		jdbcTemplate.update("DELETE FROM messages WHERE sender = 'sbench-sender'");
+		jdbcTemplate.update("DELETE FROM private_chats WHERE id < 0 AND user2 LIKE 'sbench-%'");
+	}
+
+	@Test
+	void queryLatencyOnSeededCorpus() {
+		int rows = Integer.getInteger("chat.benchmarks.search.rows", 500_000);
+		long start = System.nanoTime();
+		jdbcTemplate.update(SEED_CHATS, CHATS);
+		jdbcTemplate.update(SEED_MESSAGES, CHATS, CHATS, rows);
+		jdbcTemplate.execute("ANALYZE messages");
+		System.out.printf("Seeded %d messages in %.1f s%n", rows, (System.nanoTime() - start) / 1e9);
+
+		for (String query : List.of("w4000", "w1500", "w300", "w20 w600", "\"w3 w4\"", "w2500 or w2600", "w0")) {
+			for (String user : List.of(SEARCHER, "sbench-outsider")) {
+				long[] latencies = new long[ITERATIONS];
+				int hits = 0;
+				for (int i = 0; i < ITERATIONS; i++) {
+					long t = System.nanoTime();
+					hits = messageSearchService.search(user, query, null, MessageSearchService.DEFAULT_PAGE_SIZE).hits().size();
+					latencies[i] = System.nanoTime() - t;
+				}
+				Arrays.sort(latencies);
+				long matches = jdbcTemplate.queryForObject(
+						"SELECT count(*) FROM messages WHERE search_vector @@ websearch_to_tsquery('english', ?)", Long.class, query);
+				System.out.printf("%-16s %-16s %7d matches  p50 %8.2f ms  p99 %8.2f ms%n", query, user, matches,
+						latencies[ITERATIONS / 2] / 1e6, latencies[(int) (ITERATIONS * 0.99)] / 1e6);
+				assertThat(hits).isPositive();
+			}
+		}
+	}
+}
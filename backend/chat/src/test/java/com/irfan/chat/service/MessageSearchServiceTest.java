@@ -0,0 +1,114 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.controller.ChatController;
+import com.irfan.chat.dto.SearchHit;
+import com.irfan.chat.dto.SearchPage;
+import com.irfan.chat.model.ChatMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+class MessageSearchServiceTest {
+
+	private static final String ANN = "search-ann";
+	private static final String BEN = "search-ben";
+	private static final String CARL = "search-carl";
+
+	@Autowired
+	private MessageSearchService messageSearchService;
+
+	@Autowired
+	private MessagePersistenceService messagePersistenceService;
+
+	@Autowired
+	private PrivateChatService privateChatService;
+
+	@Autowired
+	private PrivateChatDirectory privateChatDirectory;
+
+	@Autowired
+	private ChatController chatController;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	void cleanUp() {
+		jdbcTemplate.update("DELETE FROM messages WHERE sender IN (?, ?, ?)", ANN, BEN, CARL);
+		jdbcTemplate.update("DELETE FROM private_chats WHERE user1 IN (?, ?)", ANN, BEN);
+		privateChatDirectory.evict(ANN, BEN);
+		privateChatDirectory.evict(BEN, CARL);
+	}
+
+	@Test
+	void searchIsRankedAndLimitedToWhatTheUserMaySee() {
+		messagePersistenceService.save(new ChatMessage("Spotted a zebrafish in the harbour", ANN));
+		privateChatService.sendPrivateMessage(BEN, ANN, "Zebrafish, zebrafish everywhere: the zebrafish tanks are full");
+		privateChatService.sendPrivateMessage(BEN, CARL, "Keep the zebrafish plan between us");
+
+		assertThat(messageSearchService.search(ANN, "zebrafish", null, 10).hits())
+				.extracting(SearchHit::sender, SearchHit::messageType)
+				.containsExactly(tuple(BEN, "PRIVATE"), tuple(ANN, "GLOBAL"));
+		assertThat(messageSearchService.search(CARL, "zebrafish", null, 10).hits())
+				.extracting(SearchHit::content)
+				.containsExactlyInAnyOrder("Spotted a zebrafish in the harbour", "Keep the zebrafish plan between us");
+		assertThat(messageSearchService.search(ANN, "zebrafish -harbour", null, 10).hits())
+				.extracting(SearchHit::sender)
+				.containsExactly(BEN);
+		assertThat(messageSearchService.search(ANN, "\"zebrafish tanks\"", null, 10).hits()).hasSize(1);
+	}
+
+	@Test
+	void pagesFollowTheCursorWithoutRepeats() {
+		for (int i = 0; i < 5; i++) {
+			messagePersistenceService.save(new ChatMessage("quokka update " + i, ANN));
+		}
+
+		SearchPage first = messageSearchService.search(BEN, "quokka", null, 3);
+		assertThat(first.hits()).hasSize(3);
+		assertThat(first.hasMore()).isTrue();
+
+		SearchPage second = messageSearchService.search(BEN, "quokka", first.nextCursor(), 3);
+		assertThat(second.hits()).hasSize(2);
+		assertThat(second.hasMore()).isFalse();
+		assertThat(second.nextCursor()).isNull();
+
+		List<Long> ids = new ArrayList<>(first.hits().stream().map(SearchHit::id).toList());
+		ids.addAll(second.hits().stream().map(SearchHit::id).toList());
+		assertThat(ids).doesNotHaveDuplicates().hasSize(5);
+	}
+
+	@Test
+	void rejectsBlankQueriesAndMalformedCursors() {
+		assertThatThrownBy(() -> messageSearchService.search(ANN, " ", null, 10)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> messageSearchService.search(ANN, "quokka", "0.5_nope", 10)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void searchAnswersServiceUnavailableWithoutTheSearchColumn() {
+		messageSearchService.checkSearchIndex();
+		assertThat(messageSearchService.isAvailable()).isTrue();
+
+		ReflectionTestUtils.setField(messageSearchService, "available", false);
+		try {
+			assertThatThrownBy(() -> messageSearchService.search(ANN, "zebrafish", null, 10))
+					.isInstanceOf(IllegalStateException.class);
+			assertThat(chatController.searchMessages(ANN, "zebrafish", null, 10).getStatusCode())
+					.isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		} finally {
+			messageSearchService.checkSearchIndex();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.Notification;
+import com.irfan.chat.repository.NotificationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = "chat.notifications.collapse.enabled=true")
+class NotificationCollapsingTest {
+
+	private static final String RECIPIENT = "collapse-ann";
+	private static final String OTHER_RECIPIENT = "collapse-carl";
+	private static final String SENDER = "collapse-ben";
+
+	@Autowired
+	private NotificationService notificationService;
+
+	@Autowired
+	private NotificationRepository notificationRepository;
+
+	@AfterEach
+	void cleanUp() {
+		for (String recipient : List.of(RECIPIENT, OTHER_RECIPIENT)) {
+			notificationService.markAllNotificationsAsRead(recipient);
+			notificationRepository.deleteAllInBatch(notificationRepository.findByRecipientOrderByTimestampDesc(recipient));
+		}
+	}
+
+	@Test
+	void unreadNotificationsOfAChatShareOneRow() {
+		for (int i = 1; i <= 5; i++) {
+			notificationService.sendPrivateMessageNotification(RECIPIENT, SENDER, "message " + i);
+		}
+		notificationService.sendGlobalMessageNotification(RECIPIENT, SENDER, "hello everyone");
+
+		List<Notification> unread = notificationService.getNotifications(RECIPIENT, true, null, null, null, NotificationService.DEFAULT_PAGE_SIZE).notifications();
+		assertThat(unread).hasSize(2);
+		Notification privateChat = unread.stream().filter(n -> SENDER.equals(n.getChatId())).findFirst().orElseThrow();
+		assertThat(privateChat.getCount()).isEqualTo(5);
+		assertThat(privateChat.getContent()).isEqualTo("message 5");
+		assertThat(notificationService.getUnreadNotificationCount(RECIPIENT)).isEqualTo(6);
+
+		notificationService.markNotificationsAsRead(RECIPIENT, SENDER);
+		notificationService.sendPrivateMessageNotification(RECIPIENT, SENDER, "after reading");
+
+		assertThat(notificationService.getUnreadNotificationCount(RECIPIENT)).isEqualTo(2);
+		assertThat(notificationService.getNotifications(RECIPIENT, false, null, SENDER, null, NotificationService.DEFAULT_PAGE_SIZE).notifications())
+				.extracting(Notification::getCount, Notification::isRead)
+				.containsExactly(tuple(1, false), tuple(5, true));
+	}
+
+	@Test
+	void fanOutChunksAreFoldedInOneStatement() {
+		notificationService.save(List.of(
+				new Notification(RECIPIENT, SENDER, "first", "GLOBAL", "general", "MESSAGE"),
+				new Notification(OTHER_RECIPIENT, SENDER, "first", "GLOBAL", "general", "MESSAGE")));
+
+		List<Notification> saved = notificationService.save(List.of(
+				new Notification(RECIPIENT, SENDER, "second", "GLOBAL", "general", "MESSAGE"),
+				new Notification(OTHER_RECIPIENT, SENDER, "second", "GLOBAL", "general", "MESSAGE")));
+
+		assertThat(saved).extracting(Notification::getCount).containsExactly(2, 2);
+		assertThat(saved).allSatisfy(notification -> assertThat(notification.getId()).isNotNull());
+		assertThat(notificationRepository.findByRecipientOrderByTimestampDesc(OTHER_RECIPIENT))
+				.singleElement()
+				.satisfies(notification -> {
+					assertThat(notification.getContent()).isEqualTo("second");
+					assertThat(notification.getId()).isEqualTo(saved.get(1).getId());
+				});
+	}
+}
@@ -0,0 +1,91 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.Notification;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Counts the STOMP frames the broker emits for one global message when 1k
+ * clients are connected, comparing the old four-destination delivery with the
+ * targeted path.
+ */
+class NotificationDeliveryBenchmarkTest {
+
+	private static final int SUBSCRIBERS = 1000;
+
+	@Test
+	void targetedDeliveryCutsFramesPerGlobalMessage() {
+		long legacyFrames = framesPerGlobalMessage(NotificationDeliveryBenchmarkTest::legacyDeliver);
+
+		NotificationService notificationService = new NotificationService();
+		ReflectionTestUtils.setField(notificationService, "deliveryMode", NotificationDeliveryMode.TARGETED);
+		ReflectionTestUtils.setField(notificationService, "meterRegistry", new SimpleMeterRegistry());
+		notificationService.registerMetrics();
+		long targetedFrames = framesPerGlobalMessage((template, notification) -> {
+			ReflectionTestUtils.setField(notificationService, "messagingTemplate", template);
+			notificationService.deliver(notification);
+		});
+
+		System.out.printf("Frames per global message at %d subscribers: legacy=%d targeted=%d (%.0fx fewer)%n",
+				SUBSCRIBERS, legacyFrames, targetedFrames, (double) legacyFrames / targetedFrames);
+
+		assertThat(targetedFrames).isEqualTo(SUBSCRIBERS - 1);
+		assertThat(legacyFrames).isGreaterThan(targetedFrames * SUBSCRIBERS);
+	}
+
+	private long framesPerGlobalMessage(BiConsumer<SimpMessagingTemplate, Notification> delivery) {
+		SimulatedBroker broker = new SimulatedBroker(SUBSCRIBERS);
+		SimpMessagingTemplate template = new SimpMessagingTemplate(broker);
+
+		long start = System.nanoTime();
+		for (int i = 1; i < SUBSCRIBERS; i++) {
+			Notification notification = new Notification("user" + i, "user0", "hello", "GLOBAL", "general", "MESSAGE");
+			delivery.accept(template, notification);
+		}
+		System.out.printf("  delivered in %.2f ms%n", (System.nanoTime() - start) / 1_000_000.0);
+		return broker.frames;
+	}
+
+	private static void legacyDeliver(SimpMessagingTemplate template, Notification notification) {
+		String recipient = notification.getRecipient();
+		template.convertAndSendToUser(recipient, "/queue/notifications", notification);
+		template.convertAndSend("/topic/user/" + recipient + "/notifications", notification);
+		template.convertAndSend("/topic/notifications", Map.of("recipient", recipient, "notification", notification));
+		template.convertAndSend("/topic/notifications-debug", Map.of("recipient", recipient, "notification", notification));
+	}
+
+	/**
+	 * Stands in for the simple broker: every connected client subscribes to the
+	 * shared topics, while user queues and per-user topics reach one session.
+	 */
+	private static class SimulatedBroker implements MessageChannel {
+
+		private final int subscribers;
+		private long frames;
+
+		SimulatedBroker(int subscribers) {
+			this.subscribers = subscribers;
+		}
+
+		@Override
+		public boolean send(Message<?> message, long timeout) {
+			String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+			if (destination.startsWith("/user/") || destination.startsWith("/topic/user/")) {
+				frames++;
+			} else {
+				frames += subscribers;
+			}
+			return true;
+		}
+	}
+}
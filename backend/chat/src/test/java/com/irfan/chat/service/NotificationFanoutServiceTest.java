@@ -0,0 +1,179 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs a fan-out worker with a two-job queue and two-row chunks against the test
+ * database, with the online users stubbed and the first job held until the
+ * queue has been filled.
+ */
+@SpringBootTest
+class NotificationFanoutServiceTest {
+
+	private static final String SENDER = "fanout-sender";
+	private static final List<String> RECIPIENTS = List.of("fanout-r1", "fanout-r2", "fanout-r3", "fanout-r4", "fanout-r5");
+
+	@Autowired
+	private NotificationService notificationService;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	@Qualifier("brokerChannel")
+	private AbstractSubscribableChannel brokerChannel;
+
+	private final CountDownLatch firstJobStarted = new CountDownLatch(1);
+	private final CountDownLatch releaseFirstJob = new CountDownLatch(1);
+
+	// "commit <rows so far>" after each chunk's transaction, "deliver <recipient> <its rows>" per notification
+	private final List<String> events = new CopyOnWriteArrayList<>();
+
+	private final ChannelInterceptor capture = new ChannelInterceptor() {
+		@Override
+		public Message<?> preSend(Message<?> message, MessageChannel channel) {
+			String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+			for (String recipient : RECIPIENTS) {
+				if (("/user/" + recipient + "/queue/notifications").equals(destination)) {
+					events.add("deliver " + recipient + " " + rowsFor(recipient));
+				}
+			}
+			return message;
+		}
+	};
+
+	private MeterRegistry meterRegistry;
+	private NotificationFanoutService fanoutService;
+	private Object collapse;
+
+	@BeforeEach
+	void startWorker() {
+		// one row per notification, so the row counts follow the chunks
+		collapse = ReflectionTestUtils.getField(notificationService, "collapse");
+		ReflectionTestUtils.setField(notificationService, "collapse", false);
+		UserService onlineUsers = new UserService() {
+			private boolean first = true;
+
+			@Override
+			public List<User> getOnlineUsers() {
+				if (first) {
+					first = false;
+					firstJobStarted.countDown();
+					try {
+						releaseFirstJob.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return List.of(new User(SENDER), new User("fanout-r1"), new User("fanout-r2"), new User("fanout-r3"),
+						new User("fanout-r4"), new User("fanout-r5"));
+			}
+		};
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager) {
+			@Override
+			public <T> T execute(TransactionCallback<T> action) throws TransactionException {
+				T result = super.execute(action);
+				events.add("commit " + jdbcTemplate.queryForObject(
+						"SELECT count(*) FROM notifications WHERE sender = ?", Long.class, SENDER));
+				return result;
+			}
+		};
+
+		meterRegistry = new SimpleMeterRegistry();
+		fanoutService = new NotificationFanoutService();
+		ReflectionTestUtils.setField(fanoutService, "userService", onlineUsers);
+		ReflectionTestUtils.setField(fanoutService, "notificationService", notificationService);
+		ReflectionTestUtils.setField(fanoutService, "transactionTemplate", transactionTemplate);
+		ReflectionTestUtils.setField(fanoutService, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(fanoutService, "queueCapacity", 2);
+		ReflectionTestUtils.setField(fanoutService, "batchSize", 2);
+		brokerChannel.addInterceptor(capture);
+		fanoutService.start();
+	}
+
+	@AfterEach
+	void cleanUp() throws Exception {
+		releaseFirstJob.countDown();
+		fanoutService.stop();
+		brokerChannel.removeInterceptor(capture);
+		RECIPIENTS.forEach(notificationService::markAllNotificationsAsRead);
+		jdbcTemplate.update("DELETE FROM notifications WHERE sender = ?", SENDER);
+		ReflectionTestUtils.setField(notificationService, "collapse", collapse);
+	}
+
+	@Test
+	void fullQueueRejectsJobsAndEachChunkIsPersistedBeforeItIsDelivered() throws Exception {
+		assertThat(fanoutService.submitGlobalMessage(SENDER, "fan-out 1")).isTrue();
+		assertThat(firstJobStarted.await(10, TimeUnit.SECONDS)).isTrue();
+
+		// the worker holds job 1, so two more fill the queue and the next is turned away
+		assertThat(fanoutService.submitGlobalMessage(SENDER, "fan-out 2")).isTrue();
+		assertThat(fanoutService.submitGlobalMessage(SENDER, "fan-out 3")).isTrue();
+		assertThat(queueDepth()).isEqualTo(2);
+		assertThat(fanoutService.submitGlobalMessage(SENDER, "fan-out 4")).isFalse();
+		assertThat(meterRegistry.get("chat.fanout.rejected").counter().count()).isEqualTo(1);
+
+		releaseFirstJob.countDown();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (events.size() < 3 * (3 + RECIPIENTS.size()) && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+
+		// per job: chunks of two, two and one, each committed before its recipients hear about it
+		List<String> expected = new ArrayList<>();
+		for (int job = 0; job < 3; job++) {
+			long before = job * RECIPIENTS.size();
+			for (int from = 0; from < RECIPIENTS.size(); from += 2) {
+				List<String> chunk = RECIPIENTS.subList(from, Math.min(from + 2, RECIPIENTS.size()));
+				expected.add("commit " + (before + from + chunk.size()));
+				for (String recipient : chunk) {
+					expected.add("deliver " + recipient + " " + (job + 1));
+				}
+			}
+		}
+		assertThat(events).containsExactlyElementsOf(expected);
+		assertThat(jdbcTemplate.queryForList("SELECT DISTINCT content FROM notifications WHERE sender = ?", String.class, SENDER))
+				.containsExactlyInAnyOrder("fan-out 1", "fan-out 2", "fan-out 3");
+		assertThat(queueDepth()).isZero();
+		assertThat(meterRegistry.get("chat.fanout.notifications").counter().count()).isEqualTo(3 * RECIPIENTS.size());
+	}
+
+	private double queueDepth() {
+		return meterRegistry.get("chat.fanout.queue.depth").gauge().value();
+	}
+
+	private long rowsFor(String recipient) {
+		return jdbcTemplate.queryForObject(
+				"SELECT count(*) FROM notifications WHERE sender = ? AND recipient = ?", Long.class, SENDER, recipient);
+	}
+}
@@ -0,0 +1,103 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.NotificationPage;
+import com.irfan.chat.model.Notification;
+import com.irfan.chat.repository.NotificationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class NotificationPagingTest {
+
+	private static final String RECIPIENT = "paging-ann";
+	private static final LocalDateTime BASE = LocalDate.now().atStartOfDay();
+	private static final int NOTIFICATIONS = 120;
+
+	@Autowired
+	private NotificationService notificationService;
+
+	@Autowired
+	private NotificationRepository notificationRepository;
+
+	@BeforeEach
+	void seed() {
+		List<Notification> notifications = new ArrayList<>();
+		for (int i = 0; i < NOTIFICATIONS; i++) {
+			Notification notification = i % 3 == 0
+					? new Notification(RECIPIENT, "paging-ben", "private " + i, "PRIVATE", "paging-ben", "MESSAGE")
+					: new Notification(RECIPIENT, "paging-carl", "global " + i, "GLOBAL", "general", "MESSAGE");
+			// pairs share a timestamp so the id tiebreak is exercised
+			notification.setTimestamp(BASE.plusSeconds(i / 2));
+			notification.setRead(true);
+			notifications.add(notification);
+		}
+		notificationRepository.saveAll(notifications);
+	}
+
+	@AfterEach
+	void cleanUp() {
+		notificationService.markAllNotificationsAsRead(RECIPIENT);
+		notificationRepository.deleteAllInBatch(notificationRepository.findByRecipientOrderByTimestampDesc(RECIPIENT));
+	}
+
+	@Test
+	void pagesWalkBackwardsWithoutGapsOrDuplicates() {
+		List<String> seen = new ArrayList<>();
+		String cursor = null;
+		do {
+			NotificationPage page = notificationService.getNotifications(RECIPIENT, false, null, null, cursor, 50);
+			assertThat(page.notifications()).hasSizeLessThanOrEqualTo(50);
+			page.notifications().forEach(notification -> seen.add(notification.getContent()));
+			cursor = page.nextCursor();
+			assertThat(page.hasMore()).isEqualTo(cursor != null);
+		} while (cursor != null);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = NOTIFICATIONS - 1; i >= 0; i--) {
+			expected.add((i % 3 == 0 ? "private " : "global ") + i);
+		}
+		assertThat(seen).isEqualTo(expected);
+	}
+
+	@Test
+	void filtersApplyAcrossPages() {
+		NotificationPage first = notificationService.getNotifications(RECIPIENT, false, null, "paging-ben", null, 30);
+		NotificationPage second = notificationService.getNotifications(RECIPIENT, false, null, "paging-ben", first.nextCursor(), 30);
+
+		assertThat(first.notifications()).hasSize(30);
+		assertThat(second.notifications()).hasSize(10);
+		assertThat(second.hasMore()).isFalse();
+		assertThat(second.notifications()).extracting(Notification::getContent).last().isEqualTo("private 0");
+
+		assertThat(notificationService.getNotifications(RECIPIENT, false, "GLOBAL", null, null, 200).notifications())
+				.hasSize(80)
+				.allMatch(notification -> notification.getChatType().equals("GLOBAL"));
+	}
+
+	@Test
+	void unreadPagesOnlyHoldUnreadNotifications() {
+		notificationService.sendGlobalMessageNotification(RECIPIENT, "paging-carl", "unread");
+
+		NotificationPage unread = notificationService.getNotifications(RECIPIENT, true, null, null, null, 50);
+
+		assertThat(unread.notifications()).extracting(Notification::getContent).containsExactly("unread");
+		assertThat(unread.hasMore()).isFalse();
+	}
+
+	@Test
+	void malformedCursorIsRejected() {
+		assertThatThrownBy(() -> notificationService.getNotifications(RECIPIENT, false, null, null, "not-a-cursor", 50))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,91 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.Notification;
+import com.irfan.chat.repository.NotificationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {"chat.notifications.retention-days=30", "chat.notifications.partitions.precreate-days=3"})
+class NotificationPartitionServiceTest {
+
+	private static final String RECIPIENT = "partition-ann";
+	private static final String SENDER = "partition-ben";
+	private static final LocalDate EXPIRED_DAY = LocalDate.now().minusDays(40);
+
+	@Autowired
+	private NotificationPartitionService notificationPartitionService;
+
+	@Autowired
+	private NotificationService notificationService;
+
+	@Autowired
+	private NotificationRepository notificationRepository;
+
+	@Autowired
+	private UnreadCounters unreadCounters;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@AfterEach
+	void cleanUp() {
+		notificationService.markAllNotificationsAsRead(RECIPIENT);
+		jdbcTemplate.update("DELETE FROM notifications WHERE recipient = ?", RECIPIENT);
+		jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition(EXPIRED_DAY));
+	}
+
+	@Test
+	void expiredPartitionsAreDroppedAndUpcomingOnesCreated() {
+		jdbcTemplate.execute(String.format("CREATE TABLE %s PARTITION OF notifications FOR VALUES FROM ('%s') TO ('%s')",
+				partition(EXPIRED_DAY), EXPIRED_DAY, EXPIRED_DAY.plusDays(1)));
+		Notification unread = expired("unread");
+		Notification read = expired("read");
+		read.setRead(true);
+		notificationRepository.saveAll(List.of(unread, read));
+		unreadCounters.added(unread);
+		notificationService.sendPrivateMessageNotification(RECIPIENT, SENDER, "today");
+
+		assertThat(unreadCounters.total(RECIPIENT)).isEqualTo(2);
+		assertThat(notificationService.getNotifications(RECIPIENT, false, null, null, null, NotificationService.DEFAULT_PAGE_SIZE).notifications())
+				.extracting(Notification::getContent).containsExactly("today");
+		double expiredBefore = meterRegistry.counter("chat.notifications.retention.expired.rows").count();
+
+		notificationPartitionService.maintain();
+
+		assertThat(exists(partition(EXPIRED_DAY))).isFalse();
+		assertThat(meterRegistry.counter("chat.notifications.retention.expired.rows").count() - expiredBefore).isEqualTo(2);
+		assertThat(unreadCounters.total(RECIPIENT)).isEqualTo(1);
+		assertThat(notificationRepository.findByRecipientOrderByTimestampDesc(RECIPIENT))
+				.extracting(Notification::getContent).containsExactly("today");
+		for (int i = 0; i <= 3; i++) {
+			assertThat(exists(partition(LocalDate.now().plusDays(i)))).isTrue();
+		}
+	}
+
+	private static Notification expired(String content) {
+		Notification notification = new Notification(RECIPIENT, "System", content, "GLOBAL", "general", "MESSAGE");
+		notification.setTimestamp(EXPIRED_DAY.atTime(12, 0));
+		return notification;
+	}
+
+	private boolean exists(String table) {
+		return jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table);
+	}
+
+	private static String partition(LocalDate day) {
+		return "notifications_p" + day.format(DateTimeFormatter.BASIC_ISO_DATE);
+	}
+}
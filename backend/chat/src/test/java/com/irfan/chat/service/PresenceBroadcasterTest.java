@@ -0,0 +1,133 @@
+package com.irfan.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.irfan.chat.dto.PresenceDelta;
+import com.irfan.chat.dto.PresenceSnapshot;
+import com.irfan.chat.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The window is long enough that only the explicit flush() calls below publish.
+@SpringBootTest(properties = "chat.presence.broadcast-window-ms=3600000")
+class PresenceBroadcasterTest {
+
+	@Autowired
+	private PresenceBroadcaster presenceBroadcaster;
+
+	@Autowired
+	private PresenceRegistry presenceRegistry;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	@Qualifier("brokerChannel")
+	private AbstractSubscribableChannel brokerChannel;
+
+	private final List<Message<?>> published = new CopyOnWriteArrayList<>();
+
+	private final ChannelInterceptor capture = new ChannelInterceptor() {
+		@Override
+		public Message<?> preSend(Message<?> message, MessageChannel channel) {
+			if (PresenceBroadcaster.DESTINATION.equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+				published.add(message);
+			}
+			return message;
+		}
+	};
+
+	@BeforeEach
+	void captureBroadcasts() {
+		presenceBroadcaster.flush();
+		brokerChannel.addInterceptor(capture);
+	}
+
+	@AfterEach
+	void stopCapturing() {
+		brokerChannel.removeInterceptor(capture);
+		presenceRegistry.disconnect("delta-ann", "ann-1");
+		presenceRegistry.disconnect("delta-ben", "ben-1");
+		presenceBroadcaster.flush();
+	}
+
+	@Test
+	void changesWithinAWindowAreMergedIntoOneVersionedDelta() {
+		long version = presenceBroadcaster.snapshot().version();
+
+		presenceRegistry.connect(new User("delta-ann"), "ann-1");
+		presenceRegistry.connect(new User("delta-ann"), "ann-2");
+		presenceRegistry.connect(new User("delta-ben"), "ben-1");
+		presenceRegistry.disconnect("delta-ann", "ann-2");
+		presenceRegistry.connect(new User("delta-carl"), "carl-1");
+		presenceRegistry.disconnect("delta-carl", "carl-1");
+		presenceBroadcaster.flush();
+
+		assertThat(published).hasSize(1);
+		PresenceSnapshot snapshot = presenceBroadcaster.snapshot();
+		assertThat(snapshot.version()).isEqualTo(version + 1);
+		assertThat(snapshot.users()).extracting(User::getUsername).contains("delta-ann", "delta-ben").doesNotContain("delta-carl");
+
+		presenceRegistry.disconnect("delta-ben", "ben-1");
+		presenceBroadcaster.flush();
+		presenceBroadcaster.flush();
+
+		assertThat(published).hasSize(2);
+		assertThat(presenceBroadcaster.snapshot().version()).isEqualTo(version + 2);
+	}
+
+	@Test
+	void deltaCarriesTheLastChangeOfEachUser() throws IOException {
+		presenceRegistry.connect(new User("delta-ann"), "ann-1");
+		presenceRegistry.connect(new User("delta-ben"), "ben-1");
+		presenceBroadcaster.flush();
+		published.clear();
+
+		presenceRegistry.disconnect("delta-ben", "ben-1");
+		presenceRegistry.connect(new User("delta-ben"), "ben-1");
+		presenceRegistry.disconnect("delta-ann", "ann-1");
+		presenceBroadcaster.flush();
+
+		assertThat(published).hasSize(1);
+		PresenceDelta delta = decode(published.get(0));
+		assertThat(delta.joined()).extracting(User::getUsername).containsExactly("delta-ben");
+		assertThat(delta.left()).containsExactly("delta-ann");
+	}
+
+	@Test
+	void rejoinAfterASnapshotThatMissedTheUserIsSent() throws IOException {
+		presenceRegistry.connect(new User("delta-ben"), "ben-1");
+		presenceBroadcaster.flush();
+		published.clear();
+
+		presenceRegistry.disconnect("delta-ben", "ben-1");
+		PresenceSnapshot snapshot = presenceBroadcaster.snapshot();
+		assertThat(snapshot.users()).extracting(User::getUsername).doesNotContain("delta-ben");
+		presenceRegistry.connect(new User("delta-ben"), "ben-1");
+		presenceBroadcaster.flush();
+
+		assertThat(published).hasSize(1);
+		PresenceDelta delta = decode(published.get(0));
+		assertThat(delta.version()).isEqualTo(snapshot.version() + 1);
+		assertThat(delta.joined()).extracting(User::getUsername).containsExactly("delta-ben");
+		assertThat(delta.left()).isEmpty();
+	}
+
+	private PresenceDelta decode(Message<?> message) throws IOException {
+		return objectMapper.readValue((byte[]) message.getPayload(), PresenceDelta.class);
+	}
+}
@@ -0,0 +1,58 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.User;
+import com.irfan.chat.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "chat.presence.flush-interval-ms=50")
+class PresenceRegistryTest {
+
+	private static final String USERNAME = "presence-tabs-user";
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@AfterEach
+	void cleanUp() {
+		userRepository.findByUsername(USERNAME).ifPresent(userRepository::delete);
+		userService.evictUser(USERNAME);
+	}
+
+	@Test
+	void userStaysOnlineUntilTheirLastSessionCloses() throws InterruptedException {
+		User user = userService.findOrCreateUserWithStatus(USERNAME).getUser();
+
+		assertThat(userService.connectSession(user, "tab-1")).isTrue();
+		assertThat(userService.connectSession(USERNAME, "tab-2")).isFalse();
+		assertThat(userService.getOnlineUsers()).extracting(User::getUsername).contains(USERNAME);
+		awaitPersistedOnline(true);
+
+		assertThat(userService.disconnectSession(USERNAME, "tab-1")).isFalse();
+		assertThat(userService.getOnlineUsers()).extracting(User::getUsername).contains(USERNAME);
+
+		assertThat(userService.disconnectSession(USERNAME, "tab-2")).isTrue();
+		assertThat(userService.getOnlineUsers()).extracting(User::getUsername).doesNotContain(USERNAME);
+		awaitPersistedOnline(false);
+
+		// a late duplicate disconnect for the same session must not flip anything
+		assertThat(userService.disconnectSession(USERNAME, "tab-2")).isFalse();
+	}
+
+	private void awaitPersistedOnline(boolean online) throws InterruptedException {
+		for (int attempt = 0; attempt < 100; attempt++) {
+			if (userRepository.findByUsername(USERNAME).orElseThrow().isOnline() == online) {
+				return;
+			}
+			Thread.sleep(50);
+		}
+		assertThat(userRepository.findByUsername(USERNAME).orElseThrow().isOnline()).isEqualTo(online);
+	}
+}
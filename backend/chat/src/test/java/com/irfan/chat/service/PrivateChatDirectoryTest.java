@@ -0,0 +1,213 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.PrivateChat;
+import com.irfan.chat.repository.MessageRepository;
+import com.irfan.chat.repository.PrivateChatRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@SpringBootTest
+class PrivateChatDirectoryTest {
+
+	private static final String ALICE = "pair-zoe";
+	private static final String BOB = "pair-adam";
+	// Code point order puts the capitalised name first; a linguistic collation does not.
+	private static final String CARL = "pair-carl";
+	private static final String DANA = "Pair-Dana";
+	private static final String ERIN = "pair-erin";
+	private static final String FRED = "Pair-Fred";
+	// U+1F600 against U+FF21: UTF-16 units and code points order these two differently.
+	private static final String EMOJI = "pair-\uD83D\uDE00";
+	private static final String FULLWIDTH = "pair-\uFF21";
+	private static final String LINGUISTIC = "en-US-x-icu";
+
+	@Autowired
+	private PrivateChatDirectory privateChatDirectory;
+
+	@Autowired
+	private PrivateChatService privateChatService;
+
+	@Autowired
+	private PrivateChatRepository privateChatRepository;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@AfterEach
+	void cleanUp() {
+		messageRepository.deleteAllInBatch(messageRepository.findBySender(ALICE));
+		messageRepository.deleteAllInBatch(messageRepository.findBySender(BOB));
+		jdbcTemplate.update("DELETE FROM private_chats WHERE user1 = ? AND user2 = ?", BOB, ALICE);
+		privateChatDirectory.evict(ALICE, BOB);
+		jdbcTemplate.update("DELETE FROM messages WHERE sender IN (?, ?, ?, ?)", CARL, DANA, ERIN, FRED);
+		jdbcTemplate.update("DELETE FROM private_chats WHERE user1 IN (?, ?, ?, ?)", CARL, DANA, ERIN, FRED);
+		privateChatDirectory.evict(CARL, DANA);
+		jdbcTemplate.update("DELETE FROM private_chats WHERE user1 IN (?, ?)", EMOJI, FULLWIDTH);
+		privateChatDirectory.evict(EMOJI, FULLWIDTH);
+	}
+
+	@Test
+	void concurrentFirstMessagesShareOneCanonicalChat() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Callable<Long>> calls = IntStream.range(0, 64)
+					.mapToObj(i -> (Callable<Long>) () -> i % 2 == 0
+							? privateChatDirectory.getOrCreate(ALICE, BOB)
+							: privateChatDirectory.getOrCreate(BOB, ALICE))
+					.toList();
+			Set<Long> ids = executor.invokeAll(calls).stream().map(PrivateChatDirectoryTest::join).collect(Collectors.toSet());
+			assertThat(ids).hasSize(1);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertThat(jdbcTemplate.queryForList("SELECT user1 || '/' || user2 FROM private_chats WHERE ? IN (user1, user2)", String.class, ALICE))
+				.containsExactly(BOB + "/" + ALICE);
+		assertThat(privateChatDirectory.find(ALICE, BOB)).isEqualTo(privateChatDirectory.find(BOB, ALICE));
+	}
+
+	@Test
+	void deactivatedChatIsReopenedByTheNextMessage() {
+		privateChatService.sendPrivateMessage(ALICE, BOB, "hello");
+		PrivateChat chat = privateChatService.getOrCreatePrivateChat(BOB, ALICE);
+		assertThat(chat.getLastMessage()).isEqualTo("hello");
+
+		privateChatService.deactivateChat(chat.getId());
+		assertThat(privateChatDirectory.find(ALICE, BOB)).isEmpty();
+
+		privateChatService.sendPrivateMessage(BOB, ALICE, "back again");
+		assertThat(privateChatDirectory.find(ALICE, BOB)).contains(chat.getId());
+		assertThat(privateChatRepository.findById(chat.getId())).get()
+				.satisfies(reopened -> assertThat(reopened.getIsActive()).isTrue());
+	}
+
+	@Test
+	void mixedCasePairIsFoundEitherWayRound() {
+		long chatId = privateChatDirectory.getOrCreate(CARL, DANA);
+		assertThat(jdbcTemplate.queryForObject("SELECT user1 || '/' || user2 FROM private_chats WHERE id = ?", String.class, chatId))
+				.isEqualTo(DANA + "/" + CARL);
+
+		privateChatDirectory.evict(CARL, DANA);
+		assertThat(privateChatDirectory.find(CARL, DANA)).contains(chatId);
+		privateChatDirectory.evict(CARL, DANA);
+		assertThat(privateChatDirectory.getOrCreate(DANA, CARL)).isEqualTo(chatId);
+	}
+
+	@Test
+	void pairOrderIsTheDatabasesCodePointOrder() {
+		// String#compareTo compares UTF-16 units and would put the emoji (a surrogate pair) first
+		assertThat(EMOJI.compareTo(FULLWIDTH)).isNegative();
+		assertThat(PrivateChat.compareUsernames(EMOJI, FULLWIDTH)).isPositive();
+
+		long chatId = privateChatDirectory.getOrCreate(EMOJI, FULLWIDTH);
+		assertThat(jdbcTemplate.queryForObject("SELECT user1 COLLATE \"C\" < user2 COLLATE \"C\" FROM private_chats WHERE id = ?",
+				Boolean.class, chatId)).isTrue();
+		assertThat(new PrivateChat(EMOJI, FULLWIDTH).getUser1()).isEqualTo(FULLWIDTH);
+	}
+
+	// Runs the migration's canonical-pair section against temporary tables shaped like private_chats
+	// and messages, whose username columns use a linguistic collation (ICU en-US) where
+	// 'pair-carl' sorts before 'Pair-Dana'. Temporary tables shadow the real ones for this session.
+	@Test
+	void migrationStoresPairsInTheDirectorysOrderWhateverTheCollation() {
+		assertThat(PrivateChat.compareUsernames(DANA, CARL)).isNegative();
+		assumeTrue(collationAvailable(LINGUISTIC), "needs a database encoding that supports ICU collations");
+		List<String> migration = canonicalPairMigration();
+
+		jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+			try (Statement statement = connection.createStatement()) {
+				try {
+					statement.execute("CREATE TEMP TABLE private_chats (id bigint PRIMARY KEY, user1 varchar(255) COLLATE \"" + LINGUISTIC
+							+ "\", user2 varchar(255) COLLATE \"" + LINGUISTIC + "\", created_at timestamp, is_active boolean)");
+					statement.execute("CREATE TEMP TABLE messages (id bigint PRIMARY KEY, private_chat_id bigint)");
+					// a reversed duplicate of one pair, and a lone chat stored in linguistic order
+					statement.execute("INSERT INTO private_chats VALUES (1, '" + CARL + "', '" + DANA + "', now(), true), "
+							+ "(2, '" + DANA + "', '" + CARL + "', now(), false), (3, '" + ERIN + "', '" + FRED + "', now(), true)");
+					statement.execute("INSERT INTO messages VALUES (1, 1), (2, 2)");
+					try (ResultSet rs = statement.executeQuery("SELECT user1 < user2 FROM private_chats WHERE id = 1")) {
+						rs.next();
+						assertThat(rs.getBoolean(1)).as("the temporary table sorts linguistically").isTrue();
+					}
+
+					for (String sql : migration) {
+						statement.execute(sql);
+					}
+
+					List<String> chats = new ArrayList<>();
+					try (ResultSet rs = statement.executeQuery("SELECT id || ':' || user1 || '/' || user2 FROM private_chats ORDER BY id")) {
+						while (rs.next()) {
+							chats.add(rs.getString(1));
+						}
+					}
+					assertThat(chats).containsExactly("1:" + DANA + "/" + CARL, "3:" + FRED + "/" + ERIN);
+					try (ResultSet rs = statement.executeQuery("SELECT count(*) FROM messages WHERE private_chat_id = 1")) {
+						rs.next();
+						assertThat(rs.getInt(1)).isEqualTo(2);
+					}
+				} finally {
+					statement.execute("DROP TABLE IF EXISTS pg_temp.private_chats, pg_temp.messages");
+				}
+			}
+			return null;
+		});
+	}
+
+	private boolean collationAvailable(String collation) {
+		try {
+			jdbcTemplate.queryForObject("SELECT 'a' < 'B' COLLATE \"" + collation + "\"", Boolean.class);
+			return true;
+		} catch (DataAccessException e) {
+			return false;
+		}
+	}
+
+	private static List<String> canonicalPairMigration() {
+		String sql;
+		try (var in = PrivateChatDirectoryTest.class.getResourceAsStream("/db-migration.sql")) {
+			sql = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		int start = sql.indexOf("WITH pairs AS");
+		int end = sql.indexOf("CREATE UNIQUE INDEX IF NOT EXISTS idx_private_chats_pair");
+		return Arrays.stream(sql.substring(start, end).split(";"))
+				.map(String::strip)
+				.filter(statement -> !statement.isEmpty())
+				.toList();
+	}
+
+	private static Long join(Future<Long> future) {
+		try {
+			return future.get();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.model.PrivateChat;
+import com.irfan.chat.repository.MessageRepository;
+import com.irfan.chat.repository.PrivateChatRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+		"chat.private-cache.max-chats=2",
+		"chat.private-cache.messages-per-chat=10"
+})
+class PrivateChatMessageCacheTest {
+
+	@Autowired
+	private PrivateChatService privateChatService;
+
+	@Autowired
+	private PrivateChatMessageCache privateChatMessageCache;
+
+	@Autowired
+	private PrivateChatRepository privateChatRepository;
+
+	@Autowired
+	private PrivateChatDirectory privateChatDirectory;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final List<PrivateChat> chats = new ArrayList<>();
+
+	@AfterEach
+	void cleanUp() {
+		for (PrivateChat chat : chats) {
+			messageRepository.deleteAllInBatch(messageRepository.findLatestChatMessages(chat.getId(), 1000));
+			privateChatRepository.deleteById(chat.getId());
+			privateChatDirectory.evict(chat.getUser1(), chat.getUser2());
+		}
+	}
+
+	@Test
+	void latestPagesAreServedFromTheCacheAndKeptCurrent() {
+		Long chatId = chatWithMessages("lru-alice", "lru-bob", 12);
+		double hits = requests("hit");
+
+		MessagePage loaded = privateChatService.getChatMessages(chatId, null, null, 5);
+		MessagePage cached = privateChatService.getChatMessages(chatId, null, null, 5);
+		assertThat(ids(cached)).isEqualTo(ids(loaded));
+		assertThat(cached.nextCursor()).isEqualTo(loaded.nextCursor());
+		assertThat(requests("hit")).isEqualTo(hits + 1);
+
+		ChatMessage sent = privateChatService.sendPrivateMessage("lru-bob", "lru-alice", "written through");
+		MessagePage afterSend = privateChatService.getChatMessages(chatId, null, null, 5);
+		assertThat(afterSend.messages().get(4).getId()).isEqualTo(sent.getId());
+		assertThat(requests("hit")).isEqualTo(hits + 2);
+
+		// the window holds ten messages; the oldest three only exist in the database
+		MessagePage older = privateChatService.getChatMessages(chatId, afterSend.nextCursor(), null, 5);
+		assertThat(older.hasMore()).isTrue();
+		MessagePage oldest = privateChatService.getChatMessages(chatId, older.nextCursor(), null, 5);
+		assertThat(contents(oldest)).containsExactly("message 0", "message 1", "message 2");
+		assertThat(oldest.hasMore()).isFalse();
+
+		privateChatService.deactivateChat(chatId);
+		double misses = requests("miss");
+		privateChatService.getChatMessages(chatId, null, null, 5);
+		assertThat(requests("miss")).isEqualTo(misses + 1);
+	}
+
+	@Test
+	void leastRecentlyUsedChatsAreEvicted() {
+		double evictions = meterRegistry.get("chat.private-cache.evictions").counter().count();
+		Long first = chatWithMessages("lru-carol", "lru-dave", 3);
+		Long second = chatWithMessages("lru-carol", "lru-erin", 3);
+		Long third = chatWithMessages("lru-carol", "lru-frank", 3);
+
+		privateChatService.getChatMessages(first, null, null, 5);
+		privateChatService.getChatMessages(second, null, null, 5);
+		privateChatService.getChatMessages(first, null, null, 5);
+		privateChatService.getChatMessages(third, null, null, 5);
+
+		assertThat(meterRegistry.get("chat.private-cache.evictions").counter().count()).isEqualTo(evictions + 1);
+		assertThat(privateChatMessageCache.page(first, null, null, 5)).isNotNull();
+		assertThat(privateChatMessageCache.page(second, null, null, 5)).isNull();
+	}
+
+	private Long chatWithMessages(String user1, String user2, int count) {
+		for (int i = 0; i < count; i++) {
+			privateChatService.sendPrivateMessage(i % 2 == 0 ? user1 : user2, i % 2 == 0 ? user2 : user1, "message " + i);
+		}
+		PrivateChat chat = privateChatService.getOrCreatePrivateChat(user1, user2);
+		chats.add(chat);
+		return chat.getId();
+	}
+
+	private double requests(String result) {
+		return meterRegistry.get("chat.private-cache.requests").tag("result", result).functionCounter().count();
+	}
+
+	private static List<Long> ids(MessagePage page) {
+		return page.messages().stream().map(ChatMessage::getId).toList();
+	}
+
+	private static List<String> contents(MessagePage page) {
+		return page.messages().stream().map(ChatMessage::getContent).toList();
+	}
+}
@@ -0,0 +1,138 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.dto.PrivateChatSummary;
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.model.PrivateChat;
+import com.irfan.chat.repository.MessageRepository;
+import com.irfan.chat.repository.PrivateChatRepository;
+import org.assertj.core.groups.Tuple;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+class PrivateChatServiceMessagesTest {
+
+	private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 12, 0);
+	private static final int MESSAGES = 45;
+
+	@Autowired
+	private PrivateChatService privateChatService;
+
+	@Autowired
+	private PrivateChatRepository privateChatRepository;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	private PrivateChat chat;
+	private final List<ChatMessage> saved = new ArrayList<>();
+
+	@BeforeEach
+	void seed() {
+		chat = privateChatRepository.save(new PrivateChat("cursor-alice", "cursor-bob"));
+		List<ChatMessage> messages = new ArrayList<>();
+		for (int i = 0; i < MESSAGES; i++) {
+			String sender = i % 2 == 0 ? "cursor-alice" : "cursor-bob";
+			ChatMessage message = new ChatMessage("dm " + i, sender, sender.equals("cursor-alice") ? "cursor-bob" : "cursor-alice");
+			message.setPrivateChat(chat);
+			message.setTimestamp(BASE.plusSeconds(i / 3));
+			messages.add(message);
+		}
+		saved.addAll(messageRepository.saveAll(messages));
+	}
+
+	@AfterEach
+	void cleanUp() {
+		messageRepository.deleteAllInBatch(saved);
+		privateChatRepository.delete(chat);
+	}
+
+	@Test
+	void backwardCursorWalksToTheFirstMessage() {
+		List<String> seen = new ArrayList<>();
+		MessagePage page = privateChatService.getChatMessages(chat.getId(), null, null, 20);
+		seen.addAll(0, contents(page));
+		while (page.hasMore()) {
+			page = privateChatService.getChatMessages(chat.getId(), page.nextCursor(), null, 20);
+			seen.addAll(0, contents(page));
+		}
+
+		assertThat(seen).isEqualTo(expected(0, MESSAGES));
+	}
+
+	@Test
+	void forwardCursorReturnsNewerMessagesInOrder() {
+		Long after = saved.get(9).getId();
+
+		MessagePage page = privateChatService.getChatMessages(chat.getId(), null, after, 20);
+
+		assertThat(contents(page)).isEqualTo(expected(10, 30));
+		assertThat(page.hasMore()).isTrue();
+		assertThat(page.nextCursor()).isEqualTo(saved.get(29).getId());
+
+		page = privateChatService.getChatMessages(chat.getId(), null, page.nextCursor(), 20);
+		assertThat(contents(page)).isEqualTo(expected(30, MESSAGES));
+		assertThat(page.hasMore()).isFalse();
+		assertThat(page.nextCursor()).isNull();
+	}
+
+	@Test
+	void usernamePairLookupGoesThroughTheChat() {
+		assertThat(contents(privateChatService.getPrivateMessages("cursor-bob", "cursor-alice", null, ChatService.DEFAULT_PAGE_SIZE)))
+				.containsExactlyElementsOf(expected(0, MESSAGES));
+	}
+
+	@Test
+	void usernamePairLookupPagesBackWithTheCursor() {
+		MessagePage latest = privateChatService.getPrivateMessages("cursor-bob", "cursor-alice", null, 30);
+		assertThat(contents(latest)).isEqualTo(expected(15, MESSAGES));
+		assertThat(latest.hasMore()).isTrue();
+
+		MessagePage older = privateChatService.getPrivateMessages("cursor-alice", "cursor-bob", latest.nextCursor(), 30);
+		assertThat(contents(older)).isEqualTo(expected(0, 15));
+		assertThat(older.hasMore()).isFalse();
+		assertThat(older.nextCursor()).isNull();
+
+		MessagePage none = privateChatService.getPrivateMessages("cursor-alice", "cursor-nobody", null, 30);
+		assertThat(none.messages()).isEmpty();
+		assertThat(none.hasMore()).isFalse();
+	}
+
+	@Test
+	void historyAndChatListAreReadAsDetachedRows() {
+		MessagePage page = privateChatService.getChatMessages(chat.getId(), saved.get(5).getId(), null, 5);
+		assertThat(page.messages())
+				.extracting(ChatMessage::getId, ChatMessage::getSender, ChatMessage::getMessageType, ChatMessage::getTimestamp)
+				.containsExactly(saved.subList(0, 5).stream()
+						.map(message -> tuple(message.getId(), message.getSender(), ChatMessage.MessageType.PRIVATE, message.getTimestamp()))
+						.toArray(Tuple[]::new));
+		assertThat(page.messages()).allSatisfy(message -> assertThat(message.getPrivateChat()).isNull());
+
+		assertThat(privateChatService.getUserPrivateChats("cursor-bob"))
+				.extracting(PrivateChatSummary::id, PrivateChatSummary::user1, PrivateChatSummary::isActive)
+				.containsExactly(tuple(chat.getId(), "cursor-alice", true));
+	}
+
+	private static List<String> contents(MessagePage page) {
+		return page.messages().stream().map(ChatMessage::getContent).toList();
+	}
+
+	private static List<String> expected(int from, int to) {
+		List<String> contents = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			contents.add("dm " + i);
+		}
+		return contents;
+	}
+}
@@ -0,0 +1,145 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.model.PrivateChat;
+import com.irfan.chat.repository.MessageRepository;
+import com.irfan.chat.repository.PrivateChatRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many senders writing into the same private chat at once, comparing the old
+ * transaction (select the chat, insert, then save the chat entity) with the
+ * single-statement write. Run with {@code -Dchat.benchmarks=true}.
+ */
+@SpringBootTest(properties = "chat.messages.write-behind.enabled=false")
+@EnabledIfSystemProperty(named = "chat.benchmarks", matches = "true")
+class PrivateMessageWriteBenchmarkTest {
+
+	private static final String ALICE = "dm-bench-alice";
+	private static final String BOB = "dm-bench-bob";
+	private static final int SENDERS = 32;
+	private static final int MESSAGES_PER_SENDER = 200;
+
+	private static final String LEGACY_FIND_CHAT =
+		"SELECT id FROM private_chats WHERE ((user1 = ? AND user2 = ?) OR (user1 = ? AND user2 = ?)) AND is_active";
+
+	@Autowired
+	private PrivateChatService privateChatService;
+
+	@Autowired
+	private PrivateChatDirectory privateChatDirectory;
+
+	@Autowired
+	private PrivateChatRepository privateChatRepository;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@AfterEach
+	void cleanUp() {
+		jdbcTemplate.update("DELETE FROM messages WHERE sender IN (?, ?)", ALICE, BOB);
+		jdbcTemplate.update("DELETE FROM private_chats WHERE user1 = ? AND user2 = ?", ALICE, BOB);
+		privateChatDirectory.evict(ALICE, BOB);
+	}
+
+	@Test
+	void concurrentSendersIntoOneChat() throws Exception {
+		Long chatId = privateChatService.getOrCreatePrivateChat(ALICE, BOB).getId();
+		run("warm-up", (sender, recipient, content) -> privateChatService.sendPrivateMessage(sender, recipient, content));
+
+		Result legacy = run("legacy", this::legacySend);
+		Result current = run("single statement", (sender, recipient, content) -> privateChatService.sendPrivateMessage(sender, recipient, content));
+
+		System.out.printf("%d senders x %d messages into one chat:%n  legacy:           %s%n  single statement: %s%n",
+				SENDERS, MESSAGES_PER_SENDER, legacy, current);
+
+		PrivateChat chat = privateChatRepository.findById(chatId).orElseThrow();
+		LocalDateTime latest = jdbcTemplate.queryForObject(
+				"SELECT max(created_at) FROM messages WHERE private_chat_id = ?", LocalDateTime.class, chatId);
+		assertThat(chat.getLastMessageTime()).isEqualTo(latest);
+		assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM messages WHERE private_chat_id = ?", Long.class, chatId))
+				.isEqualTo(3L * SENDERS * MESSAGES_PER_SENDER);
+	}
+
+	// What sendPrivateMessage did before: one transaction that reads the chat and rewrites its row.
+	private void legacySend(String sender, String recipient, String content) {
+		transactionTemplate.executeWithoutResult(status -> {
+			Long chatId = jdbcTemplate.queryForObject(LEGACY_FIND_CHAT, Long.class, sender, recipient, recipient, sender);
+			PrivateChat chat = privateChatRepository.findById(chatId).orElseThrow();
+			ChatMessage message = new ChatMessage(content, sender, recipient);
+			message.setPrivateChat(chat);
+			message.setTimestamp(LocalDateTime.now());
+			messageRepository.save(message);
+			chat.updateLastMessage(content, LocalDateTime.now());
+			privateChatRepository.save(chat);
+		});
+	}
+
+	private Result run(String label, Sender send) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(SENDERS);
+		try {
+			List<Callable<long[]>> senders = new ArrayList<>();
+			for (int s = 0; s < SENDERS; s++) {
+				boolean fromAlice = s % 2 == 0;
+				senders.add(() -> {
+					long[] latencies = new long[MESSAGES_PER_SENDER];
+					for (int i = 0; i < MESSAGES_PER_SENDER; i++) {
+						long start = System.nanoTime();
+						send.send(fromAlice ? ALICE : BOB, fromAlice ? BOB : ALICE, label + " " + i);
+						latencies[i] = System.nanoTime() - start;
+					}
+					return latencies;
+				});
+			}
+			long start = System.nanoTime();
+			List<Future<long[]>> results = executor.invokeAll(senders);
+			long elapsed = System.nanoTime() - start;
+
+			long[] all = new long[SENDERS * MESSAGES_PER_SENDER];
+			int offset = 0;
+			for (Future<long[]> result : results) {
+				long[] latencies = result.get();
+				System.arraycopy(latencies, 0, all, offset, latencies.length);
+				offset += latencies.length;
+			}
+			Arrays.sort(all);
+			return new Result(all.length / (elapsed / 1e9), all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private interface Sender {
+		void send(String sender, String recipient, String content);
+	}
+
+	private record Result(double messagesPerSecond, double p50Ms, double p99Ms) {
+		@Override
+		public String toString() {
+			return String.format("%.0f msg/s, p50 %.2f ms, p99 %.2f ms", messagesPerSecond, p50Ms, p99Ms);
+		}
+	}
+}
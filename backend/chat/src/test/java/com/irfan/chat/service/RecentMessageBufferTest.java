@@ -0,0 +1,83 @@
+package com.irfan.chat.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.irfan.chat.dto.MessagePage;
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.repository.MessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "chat.history.buffer.capacity=8")
+class RecentMessageBufferTest {
+
+	private static final LocalDateTime BASE = LocalDateTime.of(2100, 6, 1, 0, 0);
+
+	@Autowired
+	private RecentMessageBuffer recentMessageBuffer;
+
+	@Autowired
+	private ChatService chatService;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private final List<ChatMessage> saved = new ArrayList<>();
+
+	@AfterEach
+	void cleanUp() {
+		messageRepository.deleteAllInBatch(saved);
+	}
+
+	@Test
+	void servesPagesIdenticalToTheDatabaseWhileTheyFit() throws Exception {
+		// out of order on purpose: the buffer must keep (timestamp, id) order
+		for (int second : new int[] {0, 2, 1, 4, 3, 5, 6, 7, 8, 9}) {
+			ChatMessage message = new ChatMessage("buffered " + second, "buffer-sender");
+			message.setTimestamp(BASE.plusSeconds(second));
+			ChatMessage persisted = messageRepository.save(message);
+			saved.add(persisted);
+			recentMessageBuffer.append(persisted);
+		}
+
+		byte[] latest = recentMessageBuffer.page(null, null, 4);
+		assertThat(latest).isNotNull();
+		assertSamePage(latest, chatService.getGlobalHistory(null, null, 4));
+
+		JsonNode first = objectMapper.readTree(latest);
+		long cursor = first.get("nextCursor").asLong();
+		byte[] older = recentMessageBuffer.page(cursor, null, 4);
+		assertThat(older).isNotNull();
+		assertSamePage(older, chatService.getGlobalHistory(cursor, null, 4));
+
+		byte[] byTime = recentMessageBuffer.page(null, BASE.plusSeconds(7), 3);
+		assertThat(byTime).isNotNull();
+		assertSamePage(byTime, chatService.getGlobalHistory(null, BASE.plusSeconds(7), 3));
+
+		// only eight messages are held, so the third page of four reaches past the buffer
+		long oldestCursor = objectMapper.readTree(older).get("nextCursor").asLong();
+		assertThat(recentMessageBuffer.page(oldestCursor, null, 4)).isNull();
+		assertThat(recentMessageBuffer.hitRatio()).isGreaterThan(0);
+	}
+
+	private void assertSamePage(byte[] body, MessagePage expected) throws Exception {
+		JsonNode page = objectMapper.readTree(body);
+		List<Long> ids = new ArrayList<>();
+		page.get("messages").forEach(message -> ids.add(message.get("id").asLong()));
+
+		assertThat(ids).isEqualTo(expected.messages().stream().map(ChatMessage::getId).toList());
+		assertThat(page.get("hasMore").asBoolean()).isEqualTo(expected.hasMore());
+		assertThat(page.get("nextCursor").isNull() ? null : page.get("nextCursor").asLong()).isEqualTo(expected.nextCursor());
+	}
+}
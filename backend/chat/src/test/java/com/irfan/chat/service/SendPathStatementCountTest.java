@@ -0,0 +1,144 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.ChatMessage;
+import com.irfan.chat.model.User;
+import com.irfan.chat.repository.MessageRepository;
+import com.irfan.chat.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class SendPathStatementCountTest {
+
+	private static final String SENDER = "statement-count-sender";
+	private static final int MESSAGES = 100;
+
+	private static final AtomicLong EXECUTED = new AtomicLong();
+
+	@Autowired
+	private ChatService chatService;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private MessageRepository messageRepository;
+
+	@AfterEach
+	void cleanUp() {
+		messageRepository.deleteAllInBatch(messageRepository.findBySender(SENDER));
+		userRepository.findByUsername(SENDER).ifPresent(userRepository::delete);
+		userService.evictUser(SENDER);
+	}
+
+	@Test
+	void globalSendNeedsOneStatementPerMessage() {
+		chatService.sendGlobalMessage(message("warm-up"));
+		userService.flushLastSeen();
+
+		// What sendGlobalMessage used to do: resolve the sender, insert, then re-read and save the user.
+		EXECUTED.set(0);
+		for (int i = 0; i < MESSAGES; i++) {
+			User user = userRepository.findByUsername(SENDER).orElseThrow();
+			ChatMessage message = message("legacy " + i);
+			message.setUser(user);
+			messageRepository.save(message);
+			userRepository.findByUsername(SENDER).ifPresent(seen -> {
+				seen.setLastSeen(LocalDateTime.now());
+				userRepository.save(seen);
+			});
+		}
+		long legacy = EXECUTED.get();
+
+		EXECUTED.set(0);
+		for (int i = 0; i < MESSAGES; i++) {
+			chatService.sendGlobalMessage(message("cached " + i));
+		}
+		userService.flushLastSeen();
+		long current = EXECUTED.get();
+
+		System.out.printf("statements per global message: before %.2f, after %.2f (%d messages)%n",
+				(double) legacy / MESSAGES, (double) current / MESSAGES, MESSAGES);
+
+		assertThat(legacy).isGreaterThanOrEqualTo(4L * MESSAGES);
+		// one insert per message, plus the occasional sequence block and a single last_seen flush
+		assertThat(current).isLessThanOrEqualTo(MESSAGES + MESSAGES / 50 + 2);
+	}
+
+	private static ChatMessage message(String content) {
+		ChatMessage message = new ChatMessage(content, SENDER);
+		message.setTimestamp(LocalDateTime.now());
+		return message;
+	}
+
+	// Counts every statement execution on connections handed out by the DataSource,
+	// whether it comes from Hibernate or from JdbcTemplate.
+	@TestConfiguration
+	static class CountingDataSource {
+
+		@Bean
+		static BeanPostProcessor countStatements() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (bean instanceof DataSource dataSource) {
+						return proxy(DataSource.class, dataSource, (method, result) -> result instanceof Connection connection
+								? proxy(Connection.class, connection, CountingDataSource::wrapStatement)
+								: result);
+					}
+					return bean;
+				}
+			};
+		}
+
+		private static Object wrapStatement(Method factory, Object created) {
+			return switch (factory.getName()) {
+				case "prepareStatement" -> counting(PreparedStatement.class, (PreparedStatement) created);
+				case "prepareCall" -> counting(CallableStatement.class, (CallableStatement) created);
+				case "createStatement" -> counting(Statement.class, (Statement) created);
+				default -> created;
+			};
+		}
+
+		private static <T extends Statement> T counting(Class<T> type, T statement) {
+			return proxy(type, statement, (method, result) -> {
+				if (method.getName().startsWith("execute")) {
+					EXECUTED.incrementAndGet();
+				}
+				return result;
+			});
+		}
+
+		private static <T> T proxy(Class<T> type, T delegate, BiFunction<Method, Object, Object> wrapResult) {
+			return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (target, method, args) -> {
+				try {
+					return wrapResult.apply(method, method.invoke(delegate, args));
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}));
+		}
+	}
+}
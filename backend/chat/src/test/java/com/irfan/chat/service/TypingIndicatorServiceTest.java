@@ -0,0 +1,76 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.TypingEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TypingIndicatorServiceTest {
+
+	private static final long EXPIRY_MS = 200;
+
+	private final List<Message<?>> sent = new CopyOnWriteArrayList<>();
+	private TypingIndicatorService typingIndicatorService;
+
+	@BeforeEach
+	void setUp() {
+		SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+		template.setMessageConverter(new SimpleMessageConverter());
+		typingIndicatorService = new TypingIndicatorService();
+		ReflectionTestUtils.setField(typingIndicatorService, "messagingTemplate", template);
+		// a window no burst in this test can outlast
+		ReflectionTestUtils.setField(typingIndicatorService, "windowMs", 60_000L);
+		ReflectionTestUtils.setField(typingIndicatorService, "expiryMs", EXPIRY_MS);
+	}
+
+	@Test
+	void burstOfKeystrokesStartsTypingOnceAndTheSweepStopsIt() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			typingIndicatorService.typing("typing-bob", "typing-alice", "PRIVATE", "7");
+		}
+		assertThat(events()).containsExactly(new TypingEvent("typing-alice", "PRIVATE", "7", true));
+		assertThat(sent).allSatisfy(message ->
+				assertThat(SimpMessageHeaderAccessor.getDestination(message.getHeaders())).isEqualTo("/user/typing-bob/queue/typing"));
+
+		// still fresh, so the sweep leaves it alone
+		typingIndicatorService.expireStaleIndicators();
+		assertThat(events()).hasSize(1);
+
+		Thread.sleep(EXPIRY_MS * 2);
+		typingIndicatorService.expireStaleIndicators();
+		typingIndicatorService.expireStaleIndicators();
+		assertThat(events()).containsExactly(
+				new TypingEvent("typing-alice", "PRIVATE", "7", true),
+				new TypingEvent("typing-alice", "PRIVATE", "7", false));
+
+		// typing again after the indicator expired starts a new one
+		typingIndicatorService.typing("typing-bob", "typing-alice", "PRIVATE", "7");
+		assertThat(events()).hasSize(3).last().isEqualTo(new TypingEvent("typing-alice", "PRIVATE", "7", true));
+	}
+
+	@Test
+	void explicitStopIsSentOnceAndLeavesNothingToExpire() throws Exception {
+		typingIndicatorService.typing("typing-bob", "typing-alice", "GLOBAL", "general");
+		typingIndicatorService.stopTyping("typing-bob", "typing-alice", "GLOBAL", "general");
+		typingIndicatorService.stopTyping("typing-bob", "typing-alice", "GLOBAL", "general");
+
+		Thread.sleep(EXPIRY_MS * 2);
+		typingIndicatorService.expireStaleIndicators();
+		assertThat(events()).containsExactly(
+				new TypingEvent("typing-alice", "GLOBAL", "general", true),
+				new TypingEvent("typing-alice", "GLOBAL", "general", false));
+	}
+
+	private List<TypingEvent> events() {
+		return sent.stream().map(message -> (TypingEvent) message.getPayload()).toList();
+	}
+}
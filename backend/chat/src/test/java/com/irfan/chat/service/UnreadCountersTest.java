@@ -0,0 +1,121 @@
+package com.irfan.chat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.irfan.chat.dto.UnreadCounts;
+import com.irfan.chat.model.Notification;
+import com.irfan.chat.repository.NotificationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The push window is long enough that only the explicit flush() calls below publish.
+@SpringBootTest(properties = {"chat.notifications.unread-push-ms=3600000", "chat.notifications.collapse.enabled=true"})
+class UnreadCountersTest {
+
+	private static final String RECIPIENT = "unread-ann";
+	private static final String DESTINATION = "/user/" + RECIPIENT + UnreadCounters.DESTINATION;
+
+	@Autowired
+	private NotificationService notificationService;
+
+	@Autowired
+	private UnreadCounters unreadCounters;
+
+	@Autowired
+	private NotificationRepository notificationRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	@Qualifier("brokerChannel")
+	private AbstractSubscribableChannel brokerChannel;
+
+	private final List<Message<?>> pushed = new CopyOnWriteArrayList<>();
+
+	private final ChannelInterceptor capture = new ChannelInterceptor() {
+		@Override
+		public Message<?> preSend(Message<?> message, MessageChannel channel) {
+			if (DESTINATION.equals(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))) {
+				pushed.add(message);
+			}
+			return message;
+		}
+	};
+
+	@BeforeEach
+	void capturePushes() {
+		unreadCounters.flush();
+		brokerChannel.addInterceptor(capture);
+	}
+
+	@AfterEach
+	void cleanUp() {
+		brokerChannel.removeInterceptor(capture);
+		notificationService.markAllNotificationsAsRead(RECIPIENT);
+		unreadCounters.flush();
+		notificationRepository.deleteAllInBatch(notificationRepository.findByRecipientOrderByTimestampDesc(RECIPIENT));
+	}
+
+	@Test
+	void countsFollowCreatesAndReadsAndArePushedOncePerWindow() throws IOException {
+		notificationService.sendPrivateMessageNotification(RECIPIENT, "unread-ben", "one");
+		notificationService.sendPrivateMessageNotification(RECIPIENT, "unread-ben", "two");
+		notificationService.sendGlobalMessageNotification(RECIPIENT, "unread-ben", "three");
+
+		assertThat(notificationService.getUnreadNotificationCount(RECIPIENT)).isEqualTo(3);
+		assertThat(unreadCounters.snapshot(RECIPIENT).chats()).isEqualTo(Map.of("unread-ben", 2L, "general", 1L));
+		assertThat(notificationService.getNotifications(RECIPIENT, true, null, null, null, NotificationService.DEFAULT_PAGE_SIZE).notifications())
+				.extracting(Notification::getCount).containsOnly(2, 1);
+
+		unreadCounters.flush();
+		assertThat(pushed).hasSize(1);
+		assertThat(decode(pushed.get(0))).isEqualTo(new UnreadCounts(3, Map.of("unread-ben", 2L, "general", 1L)));
+
+		notificationService.markNotificationsAsRead(RECIPIENT, "unread-ben");
+		notificationService.markNotificationsAsRead(RECIPIENT, "unread-ben");
+		unreadCounters.flush();
+
+		assertThat(notificationService.getUnreadNotificationCount(RECIPIENT)).isEqualTo(1);
+		assertThat(pushed).hasSize(2);
+		assertThat(decode(pushed.get(1))).isEqualTo(new UnreadCounts(1, Map.of("unread-ben", 0L)));
+
+		notificationService.markAllNotificationsAsRead(RECIPIENT);
+		unreadCounters.flush();
+
+		assertThat(notificationService.getUnreadNotificationCount(RECIPIENT)).isZero();
+		assertThat(decode(pushed.get(2))).isEqualTo(new UnreadCounts(0, Map.of("general", 0L)));
+	}
+
+	@Test
+	void rebuildRestoresCountsFromUnreadRows() {
+		Notification collapsed = new Notification(RECIPIENT, "unread-ben", "b", "PRIVATE", "unread-ben", "MESSAGE");
+		collapsed.setCount(2);
+		notificationRepository.saveAll(List.of(collapsed, new Notification(RECIPIENT, "System", "c", "GLOBAL", null, "TEST")));
+		assertThat(unreadCounters.total(RECIPIENT)).isZero();
+
+		unreadCounters.rebuild();
+
+		assertThat(unreadCounters.total(RECIPIENT)).isEqualTo(3);
+		assertThat(unreadCounters.snapshot(RECIPIENT).chats()).isEqualTo(Map.of("unread-ben", 2L, "", 1L));
+	}
+
+	private UnreadCounts decode(Message<?> message) throws IOException {
+		return objectMapper.readValue((byte[]) message.getPayload(), UnreadCounts.class);
+	}
+}
@@ -0,0 +1,61 @@
+package com.irfan.chat.service;
+
+import com.irfan.chat.model.User;
+import com.irfan.chat.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class UserServiceCacheTest {
+
+	private static final List<String> USERS = List.of("lru-ann", "lru-ben", "lru-cat");
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private int cacheSize;
+
+	@BeforeEach
+	void shrinkCache() {
+		cacheSize = (int) ReflectionTestUtils.getField(userService, "cacheSize");
+		ReflectionTestUtils.setField(userService, "cacheSize", 2);
+		cached().clear();
+	}
+
+	@AfterEach
+	void restoreCache() {
+		ReflectionTestUtils.setField(userService, "cacheSize", cacheSize);
+		USERS.forEach(userService::evictUser);
+		USERS.forEach(username -> userRepository.findByUsername(username).ifPresent(userRepository::delete));
+	}
+
+	@Test
+	void leastRecentlyResolvedUserIsEvicted() {
+		userService.findOrCreateUserWithStatus("lru-ann");
+		userService.findOrCreateUserWithStatus("lru-ben");
+
+		// ann is resolved again, so ben is now the one least recently used
+		User ann = userService.findOrCreateUserWithStatus("lru-ann").getUser();
+		userService.findOrCreateUserWithStatus("lru-cat");
+
+		assertThat(cached().keySet()).containsExactlyInAnyOrder("lru-ann", "lru-cat");
+		assertThat(userService.findOrCreateUserWithStatus("lru-ann").getUser()).isSameAs(ann);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, User> cached() {
+		return (Map<String, User>) ReflectionTestUtils.getField(userService, "usersByName");
+	}
+}
@@ -19,12 +19,15 @@ function DirectChatWrapper({
   onlineUsers, 
   globalMessages, 
   privateMessages, 
+  inbox, 
   message, 
   setMessage, 
   onSendGlobal, 
   onSendPrivate, 
   onRetryMessages, 
-  onOpenDM
+  onOpenDM,
+  privateCursors,
+  onLoadOlderPrivate
 }) {
   const { dmUsername } = useParams()
   const navigate = useNavigate()
@@ -45,12 +48,15 @@ function DirectChatWrapper({
       onlineUsers={onlineUsers}
       globalMessages={globalMessages}
       privateMessages={privateMessages}
+      inbox={inbox}
       message={message}
       setMessage={setMessage}
       onSendGlobal={onSendGlobal}
       onSendPrivate={handleSendPrivate}
       onRetryMessages={onRetryMessages}
       onOpenDM={onOpenDM}
+      hasOlderPrivate={Boolean(dmUsername && privateCursors[dmUsername])}
+      onLoadOlderPrivate={() => onLoadOlderPrivate(dmUsername)}
       currentRoute="dm"
       dmUsername={dmUsername}
       onBackToGeneral={() => navigate('/general')}
@@ -65,7 +71,10 @@ function ChatApp() {
   const [error, setError] = useState('')
   const [message, setMessage] = useState('')
   const [globalMessages, setGlobalMessages] = useState([])
+  const [globalCursor, setGlobalCursor] = useState(null)
   const [privateMessages, setPrivateMessages] = useState({})
+  const [privateCursors, setPrivateCursors] = useState({})
+  const [inbox, setInbox] = useState([])
   const [onlineUsers, setOnlineUsers] = useState([])
   const [loading, setLoading] = useState(false)
   
@@ -73,6 +82,9 @@ function ChatApp() {
   
   const clientRef = useRef(null)
   const onlineUsersInterval = useRef(null)
+  const presenceVersion = useRef(null)
+  const loadingOlderGlobal = useRef(false)
+  const loadingOlderPrivate = useRef(new Set())
 
 
 
@@ -121,8 +133,9 @@ function ChatApp() {
     try {
       setLoading(true)
       setError(null)
-      const response = await axios.get(`${API_BASE}/api/messages/all`)
-      setGlobalMessages(response.data)
+      const response = await axios.get(`${API_BASE}/api/messages/global`)
+      setGlobalMessages(response.data.messages)
+      setGlobalCursor(response.data.nextCursor)
     } catch (err) {
       setError('Failed to load messages. Please refresh the page.')
       
@@ -134,11 +147,46 @@ function ChatApp() {
     }
   }
 
+  // Older pages go in front of what is already shown, skipping anything that arrived twice
+  const loadOlderGlobalMessages = async () => {
+    if (!globalCursor || loadingOlderGlobal.current) return
+    loadingOlderGlobal.current = true
+    try {
+      const { data } = await axios.get(`${API_BASE}/api/messages/global`, { params: { before: globalCursor } })
+      setGlobalMessages((prev) => [...data.messages.filter((m) => !prev.some((p) => p.id === m.id)), ...prev])
+      setGlobalCursor(data.nextCursor)
+    } catch (err) {
+      console.error('Error loading older messages:', err)
+    } finally {
+      loadingOlderGlobal.current = false
+    }
+  }
+
   
+  const applyPresenceSnapshot = (snapshot) => {
+    presenceVersion.current = snapshot.version
+    setOnlineUsers(snapshot.users)
+  }
+
+  const applyPresenceDelta = (delta) => {
+    if (presenceVersion.current === null || delta.version <= presenceVersion.current) {
+      return
+    }
+    if (delta.version !== presenceVersion.current + 1) {
+      loadOnlineUsers()
+      return
+    }
+    presenceVersion.current = delta.version
+    setOnlineUsers((prev) => {
+      const changed = new Set([...delta.left, ...delta.joined.map((user) => user.username)])
+      return [...prev.filter((user) => !changed.has(user.username)), ...delta.joined]
+    })
+  }
+
   const loadOnlineUsers = async () => {
     try {
-      const response = await axios.get(`${API_BASE}/api/users/online`)
-      setOnlineUsers(response.data)
+      const response = await axios.get(`${API_BASE}/api/presence`)
+      applyPresenceSnapshot(response.data)
     } catch (err) {
       
     }
@@ -147,12 +195,39 @@ function ChatApp() {
 
 
   
-  const loadPrivateMessages = async (otherUser) => {
+  // Without a cursor this replaces the conversation with its latest page; with one, the page before it goes in front
+  const loadPrivateMessages = async (otherUser, before = null) => {
+    if (before) {
+      if (loadingOlderPrivate.current.has(otherUser)) return
+      loadingOlderPrivate.current.add(otherUser)
+    }
     try {
-      const { data } = await axios.get(`${API_BASE}/api/messages/private/${encodeURIComponent(username)}/${encodeURIComponent(otherUser)}`)
-      setPrivateMessages((prev) => ({ ...prev, [otherUser]: data }))
+      const { data } = await axios.get(`${API_BASE}/api/private-chat/${encodeURIComponent(username)}/${encodeURIComponent(otherUser)}/messages`, {
+        params: before ? { before } : {}
+      })
+      setPrivateMessages((prev) => {
+        const current = prev[otherUser] || []
+        return {
+          ...prev,
+          [otherUser]: before
+            ? [...data.messages.filter((m) => !current.some((p) => p.id === m.id)), ...current]
+            : data.messages
+        }
+      })
+      setPrivateCursors((prev) => ({ ...prev, [otherUser]: data.nextCursor }))
     } catch (err) {
-      setPrivateMessages((prev) => ({ ...prev, [otherUser]: [] }))
+      console.error('Error loading private messages:', err)
+      if (!before) {
+        setPrivateMessages((prev) => ({ ...prev, [otherUser]: [] }))
+      }
+    } finally {
+      loadingOlderPrivate.current.delete(otherUser)
+    }
+  }
+
+  const loadOlderPrivateMessages = (otherUser) => {
+    if (privateCursors[otherUser]) {
+      loadPrivateMessages(otherUser, privateCursors[otherUser])
     }
   }
 
@@ -219,9 +294,12 @@ function ChatApp() {
           }
         })
         
-        client.subscribe('/topic/online-users', (frame) => {
-          const users = JSON.parse(frame.body)
-          setOnlineUsers(users)
+        client.subscribe('/topic/presence', (frame) => {
+          applyPresenceDelta(JSON.parse(frame.body))
+        })
+        
+        client.subscribe('/app/presence', (frame) => {
+          applyPresenceSnapshot(JSON.parse(frame.body))
         })
         
         
@@ -287,59 +365,20 @@ function ChatApp() {
           }
         })
         
-        
-        client.subscribe('/topic/user/' + username + '/notifications', (frame) => {
-          try {
-            const notification = JSON.parse(frame.body)
-            console.log('Received notification via /topic/user/' + username + '/notifications:', notification)
-            
-            
-            const event = new CustomEvent('chatNotification', { 
-              detail: notification 
-            })
-            window.dispatchEvent(event)
-            
-          } catch (error) {
-            console.error('Error processing user topic notification:', error)
-          }
-        })
-        
-        
-        client.subscribe('/topic/notifications', (frame) => {
+        // Unread counts: a snapshot on subscribe, then the chats that changed
+        const dispatchUnread = (frame) => {
           try {
-            const data = JSON.parse(frame.body)
-            console.log('Received notification via /topic/notifications:', data)
-            
-            
-            if (data.recipient === username) {
-              const notification = data.notification
-              console.log('Processing global notification for current user:', notification)
-              
-              
-              const event = new CustomEvent('chatNotification', { 
-                detail: notification 
-              })
-              window.dispatchEvent(event)
-            }
-            
+            window.dispatchEvent(new CustomEvent('chatUnread', { detail: JSON.parse(frame.body) }))
           } catch (error) {
-            console.error('Error processing global notification:', error)
+            console.error('Error processing unread counts:', error)
           }
-        })
-        
+        }
+        client.subscribe('/user/queue/unread', dispatchUnread)
+        client.subscribe('/app/unread', dispatchUnread)
         
-        client.subscribe('/topic/notifications-debug', (frame) => {
-          try {
-            const debugData = JSON.parse(frame.body)
-            console.log('Debug notification data:', debugData)
-          } catch (error) {
-            console.error('Error processing debug notification:', error)
-          }
-        })
         
 
         
-        
         console.log('WebSocket STOMP connection established for user:', username)
         
         
@@ -428,43 +467,33 @@ function ChatApp() {
   }
 
   const openDM = async (other) => {
-    try {
-      console.log('Opening DM with:', other)
-      const { data } = await axios.get(`${API_BASE}/api/private-chat/${encodeURIComponent(username)}/${encodeURIComponent(other)}/messages`)
-      
-      console.log('Loaded private messages:', data)
-      setPrivateMessages((prev) => ({ ...prev, [other]: data }))
-    } catch (err) {
-      console.error('Error loading private messages:', err)
-      setPrivateMessages((prev) => ({ ...prev, [other]: [] }))
-    }
+    console.log('Opening DM with:', other)
+    await loadPrivateMessages(other)
   }
   
   
+  // One request for every conversation with its last message and unread count; messages load when a DM is opened
   const loadPrivateChats = async () => {
     try {
-      console.log('Loading private chats for user:', username)
-      const { data } = await axios.get(`${API_BASE}/api/private-chats/${encodeURIComponent(username)}`)
-      console.log('Loaded private chats:', data)
-      
-      
-      for (const chat of data) {
-        const otherUser = chat.getOtherUser ? chat.getOtherUser(username) : 
-                         (chat.user1.equals(username) ? chat.user2 : chat.user1)
-        if (otherUser) {
-          await openDM(otherUser)
-        }
-      }
+      console.log('Loading inbox for user:', username)
+      const { data } = await axios.get(`${API_BASE}/api/private-chats/${encodeURIComponent(username)}/inbox`)
+      console.log('Loaded inbox:', data)
+      setInbox(data)
     } catch (err) {
-      console.error('Error loading private chats:', err)
+      console.error('Error loading inbox:', err)
     }
   }
   
-
-  
-
-  
-
+  useEffect(() => {
+    // Unread counts of private chats are keyed by the other user's name
+    const handleUnreadCounts = (event) => {
+      const chats = event.detail.chats || {}
+      setInbox((prev) => prev.map((entry) =>
+        entry.otherUser in chats ? { ...entry, unread: chats[entry.otherUser] } : entry))
+    }
+    window.addEventListener('chatUnread', handleUnreadCounts)
+    return () => window.removeEventListener('chatUnread', handleUnreadCounts)
+  }, [])
   
   
   const sendGeneralTypingIndicator = async () => {
@@ -508,12 +537,17 @@ function ChatApp() {
         setMessage={setMessage}
         globalMessages={globalMessages}
         privateMessages={privateMessages}
+        inbox={inbox}
         onlineUsers={onlineUsers}
         loading={loading}
         onSendGlobal={sendGlobal}
         onSendPrivate={sendPrivate}
         onRetryMessages={loadGlobalMessages}
+        hasOlderGlobal={globalCursor !== null}
+        onLoadOlderGlobal={loadOlderGlobalMessages}
         onOpenDM={openDM}
+        privateCursors={privateCursors}
+        onLoadOlderPrivate={loadOlderPrivateMessages}
         retryConnection={retryConnection}
 
       />
@@ -550,12 +584,15 @@ function ChatAppWrapper(props) {
                 onlineUsers={props.onlineUsers}
                 globalMessages={props.globalMessages}
                 privateMessages={props.privateMessages}
+                inbox={props.inbox}
                 message={props.message}
                 setMessage={props.setMessage}
                 onSendGlobal={props.onSendGlobal}
                 onSendPrivate={props.onSendPrivate}
                 onRetryMessages={props.onRetryMessages}
                 onOpenDM={props.onOpenDM}
+                hasOlderGlobal={props.hasOlderGlobal}
+                onLoadOlderGlobal={props.onLoadOlderGlobal}
                 currentRoute="general"
 
               />
@@ -572,12 +609,15 @@ function ChatAppWrapper(props) {
                 onlineUsers={props.onlineUsers}
                 globalMessages={props.globalMessages}
                 privateMessages={props.privateMessages}
+                inbox={props.inbox}
                 message={props.message}
                 setMessage={props.setMessage}
                 onSendGlobal={props.onSendGlobal}
                 onSendPrivate={props.onSendPrivate}
                 onRetryMessages={props.onRetryMessages}
                 onOpenDM={props.onOpenDM}
+                privateCursors={props.privateCursors}
+                onLoadOlderPrivate={props.onLoadOlderPrivate}
               />
             } 
           />
@@ -13,12 +13,17 @@ function ChatLayout({
   onlineUsers,
   globalMessages,
   privateMessages,
+  inbox,
   message,
   setMessage,
   onSendGlobal,
   onSendPrivate,
   onRetryMessages,
   onOpenDM,
+  hasOlderGlobal,
+  onLoadOlderGlobal,
+  hasOlderPrivate,
+  onLoadOlderPrivate,
   currentRoute,
   dmUsername,
   onBackToGeneral
@@ -34,23 +39,12 @@ function ChatLayout({
   }
   
   
+  // onOpenDM loads the latest page; it is recreated on every render, so only a different DM reloads it
   useEffect(() => {
     if (dmUsername && username) {
-      const loadMessages = async () => {
-        try {
-          const response = await fetch(`${import.meta.env.VITE_API_URL || 'http://localhost:8080'}/api/messages/private/${encodeURIComponent(username)}/${encodeURIComponent(dmUsername)}`)
-          if (response.ok) {
-            const data = await response.json()
-            onOpenDM(dmUsername)
-          }
-        } catch (error) {
-          
-        }
-      }
-      
-      loadMessages()
+      onOpenDM(dmUsername)
     }
-  }, [dmUsername, username, onOpenDM])
+  }, [dmUsername, username])
 
   
 
@@ -68,6 +62,7 @@ function ChatLayout({
       <Sidebar 
         users={onlineUsers} 
         currentUser={username} 
+        inbox={inbox}
         activeDM={dmUsername} 
         onSelectUser={handleOpenDM} 
         loading={loading}
@@ -128,6 +123,8 @@ function ChatLayout({
               currentUser={username}
               loading={loading}
               onRetry={onRetryMessages}
+              hasOlder={hasOlderGlobal}
+              onLoadOlder={onLoadOlderGlobal}
             />
           ) : (
             <DirectChat 
@@ -137,6 +134,8 @@ function ChatLayout({
               message={message}
               setMessage={setMessage}
               onSendPrivate={() => onSendPrivate(dmUsername)}
+              hasOlder={hasOlderPrivate}
+              onLoadOlder={onLoadOlderPrivate}
             />
           )}
         </div>
@@ -1,13 +1,14 @@
 import React from 'react'
-import { MessageItem, useAutoScroll } from './MessageUtils'
+import { MessageItem, useAutoScroll, useLoadOlder } from './MessageUtils'
 
-function DirectChat({ peer, messages, currentUser, message, setMessage, onSendPrivate }) {
+function DirectChat({ peer, messages, currentUser, message, setMessage, onSendPrivate, hasOlder, onLoadOlder }) {
   const messagesEndRef = useAutoScroll(messages)
+  const [containerRef, handleScroll] = useLoadOlder(messages, hasOlder, onLoadOlder)
 
   return (
     <div className="direct-chat">
       
-      <div className="messages-container">
+      <div className="messages-container" ref={containerRef} onScroll={handleScroll}>
         {(!messages || messages.length === 0) ? (
           <div className="welcome-message">
             <div className="welcome-icon">💬</div>
@@ -21,8 +22,14 @@ function DirectChat({ peer, messages, currentUser, message, setMessage, onSendPr
               <span className="message-count">{messages.length} messages</span>
             </div>
             
+            {hasOlder && (
+              <button onClick={onLoadOlder} className="load-more">
+                Load older
+              </button>
+            )}
+            
             {messages.map((msg, idx) => (
-              <div key={`${msg.sender}-${msg.timestamp}-${idx}`} className={`message-wrapper ${msg.sender === currentUser ? 'own-message' : ''}`}>
+              <div key={msg.id ?? `${msg.sender}-${msg.timestamp}-${idx}`} className={`message-wrapper ${msg.sender === currentUser ? 'own-message' : ''}`}>
                 <MessageItem message={msg} currentUser={currentUser} />
               </div>
             ))}
@@ -1,8 +1,9 @@
 import React from 'react'
-import { MessageItem, useAutoScroll } from './MessageUtils'
+import { MessageItem, useAutoScroll, useLoadOlder } from './MessageUtils'
 
-function GlobalChat({ messages, currentUser, loading, onRetry }) {
+function GlobalChat({ messages, currentUser, loading, onRetry, hasOlder, onLoadOlder }) {
   const messagesEndRef = useAutoScroll(messages)
+  const [containerRef, handleScroll] = useLoadOlder(messages, hasOlder, onLoadOlder)
 
   if (loading) {
     return (
@@ -15,7 +16,7 @@ function GlobalChat({ messages, currentUser, loading, onRetry }) {
 
   return (
     <div className="global-chat">
-      <div className="messages-container">
+      <div className="messages-container" ref={containerRef} onScroll={handleScroll}>
         {messages.length === 0 ? (
           <div className="welcome-message">
             <div className="welcome-icon">👋</div>
@@ -38,8 +39,14 @@ function GlobalChat({ messages, currentUser, loading, onRetry }) {
               </button>
             </div>
             
+            {hasOlder && (
+              <button onClick={onLoadOlder} className="load-more">
+                Load older
+              </button>
+            )}
+            
             {messages.map((message, index) => (
-              <div key={index} className={`message-wrapper ${message.sender === currentUser ? 'own-message' : ''}`}>
+              <div key={message.id ?? `local-${index}`} className={`message-wrapper ${message.sender === currentUser ? 'own-message' : ''}`}>
                 <MessageItem message={message} currentUser={currentUser} />
               </div>
             ))}
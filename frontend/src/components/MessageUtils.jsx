@@ -44,9 +44,45 @@ export const useAutoScroll = (messages) => {
     messagesEndRef.current?.scrollIntoView({ behavior: 'smooth' })
   }
   
+  // Only a new latest message scrolls down; older pages prepended above it don't
+  const newest = messages && messages.length > 0 ? messages[messages.length - 1] : null
+  
   React.useEffect(() => {
     scrollToBottom()
-  }, [messages])
+  }, [newest])
   
   return messagesEndRef
 }
+
+
+// Asks for the previous page once the list is scrolled to the top, and keeps
+// the messages that were on screen in place when that page is prepended
+export const useLoadOlder = (messages, hasOlder, onLoadOlder) => {
+  const containerRef = React.useRef(null)
+  const previous = React.useRef({ first: null, height: 0 })
+  const lastScrollTop = React.useRef(0)
+  
+  React.useLayoutEffect(() => {
+    const container = containerRef.current
+    if (!container) return
+    const { first, height } = previous.current
+    if (first && messages[0] !== first && messages.includes(first)) {
+      container.style.scrollBehavior = 'auto'
+      container.scrollTop += container.scrollHeight - height
+      container.style.scrollBehavior = ''
+    }
+    previous.current = { first: messages[0] || null, height: container.scrollHeight }
+  }, [messages])
+  
+  // Scrolling down from the top (e.g. the initial scroll to the latest message) doesn't count
+  const handleScroll = (e) => {
+    const top = e.currentTarget.scrollTop
+    const scrolledUp = top < lastScrollTop.current
+    lastScrollTop.current = top
+    if (hasOlder && scrolledUp && top < 80) {
+      onLoadOlder()
+    }
+  }
+  
+  return [containerRef, handleScroll]
+}
@@ -4,6 +4,7 @@ import './NotificationSystem.css';
 
 const NotificationSystem = ({ username, connected }) => {
   const [notifications, setNotifications] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
   const [unreadCount, setUnreadCount] = useState(0);
   const [showNotifications, setShowNotifications] = useState(false);
   const [showToast, setShowToast] = useState(false);
@@ -12,15 +13,18 @@ const NotificationSystem = ({ username, connected }) => {
   const toastTimeoutRef = useRef(null);
 
   
-  const loadNotifications = async () => {
+  const loadNotifications = async (before = null) => {
     if (!username || !connected) return;
     
     try {
-      const response = await fetch(`${import.meta.env.VITE_API_URL || 'http://localhost:8080'}/api/notifications/${encodeURIComponent(username)}`);
+      const query = before ? `?before=${encodeURIComponent(before)}` : '';
+      const response = await fetch(`${import.meta.env.VITE_API_URL || 'http://localhost:8080'}/api/notifications/${encodeURIComponent(username)}${query}`);
       if (response.ok) {
         const data = await response.json();
-        setNotifications(data);
-        setUnreadCount(data.filter(n => !n.read).length);
+        setNotifications(prev => before
+          ? [...prev, ...data.notifications.filter(n => !prev.some(p => p.id === n.id))]
+          : data.notifications);
+        setNextCursor(data.nextCursor);
       }
     } catch (error) {
       console.error('Error loading notifications:', error);
@@ -124,7 +128,10 @@ const NotificationSystem = ({ username, connected }) => {
         console.log('NotificationSystem: Received notification via custom event:', notification);
         
         
-        setNotifications(prev => [notification, ...prev]);
+        // A collapsed notification replaces the unread row(s) it was folded from
+        const replaces = (n) => n.id === notification.id
+          || (notification.count > 1 && !n.read && n.chatId === notification.chatId);
+        setNotifications(prev => [notification, ...prev.filter(n => !replaces(n))]);
         
         
         if (!notification.read) {
@@ -141,7 +148,6 @@ const NotificationSystem = ({ username, connected }) => {
         
         setTimeout(() => {
           loadNotifications();
-          loadUnreadCount();
         }, 200);
         
       } catch (error) {
@@ -154,9 +160,16 @@ const NotificationSystem = ({ username, connected }) => {
     
     window.addEventListener('chatNotification', handleWebSocketNotification);
     
+    // The server pushes the total whenever a chat's unread count changes
+    const handleUnreadCounts = (event) => {
+      setUnreadCount(event.detail.total);
+    };
+    window.addEventListener('chatUnread', handleUnreadCounts);
+    
     return () => {
       console.log('NotificationSystem: Removing event listener for chatNotification events');
       window.removeEventListener('chatNotification', handleWebSocketNotification);
+      window.removeEventListener('chatUnread', handleUnreadCounts);
     };
   }, [connected]);
 
@@ -172,23 +185,10 @@ const NotificationSystem = ({ username, connected }) => {
     const pollInterval = setInterval(() => {
       console.log('NotificationSystem: Auto-polling for notifications every 2 seconds');
       loadNotifications();
-      loadUnreadCount();
     }, 2000); // Poll every 2 seconds
     
-    
-    const countInterval = setInterval(() => {
-      loadUnreadCount();
-    }, 500); // Poll count every 500ms
-    
-    
-    const backgroundInterval = setInterval(() => {
-      loadUnreadCount();
-    }, 1000); // Every 1 second for background updates
-    
     return () => {
       clearInterval(pollInterval);
-      clearInterval(countInterval);
-      clearInterval(backgroundInterval);
     };
   }, [connected, username]);
 
@@ -280,7 +280,10 @@ const NotificationSystem = ({ username, connected }) => {
                   onClick={() => handleNotificationClick(notification)}
                 >
                   <div className="notification-content">
-                    <div className="notification-sender">{notification.sender}</div>
+                    <div className="notification-sender">
+                      {notification.sender}
+                      {notification.count > 1 && ` · ${notification.count} new messages`}
+                    </div>
                     <div className="notification-text">{notification.content}</div>
                     <div className="notification-time">
                       {new Date(notification.timestamp).toLocaleTimeString()}
@@ -290,6 +293,11 @@ const NotificationSystem = ({ username, connected }) => {
                 </div>
               ))
             )}
+            {nextCursor && (
+              <button onClick={() => loadNotifications(nextCursor)} className="load-more">
+                Load older
+              </button>
+            )}
           </div>
         </div>
       )}
@@ -1,7 +1,8 @@
 import React from 'react'
 
-function Sidebar({ users, currentUser, activeDM, onSelectUser, loading, isOpen, onClose }) {
+function Sidebar({ users, currentUser, inbox = [], activeDM, onSelectUser, loading, isOpen, onClose }) {
   const otherUsers = users.filter(user => user.username !== currentUser)
+  const unread = Object.fromEntries(inbox.map(entry => [entry.otherUser, entry.unread]))
   
   return (
     <>
@@ -62,6 +63,9 @@ function Sidebar({ users, currentUser, activeDM, onSelectUser, loading, isOpen,
                 <span className="user-status">Online</span>
               </div>
               <div className="user-indicator">
+                {unread[user.username] > 0 && (
+                  <span className="unread-count">{unread[user.username]}</span>
+                )}
                 <div className="status-dot online"></div>
               </div>
             </div>